@@ -0,0 +1,21 @@
+import javax.swing.SwingWorker;
+import java.nio.file.Path;
+
+// Exports the catalog on a worker thread; see CsvBookWriter.export
+public class BookExportTask extends SwingWorker<Integer, Void> {
+    private final Catalog catalog;
+    private final Path target;
+
+    public BookExportTask(Catalog catalog, Path target) {
+        this.catalog = catalog;
+        this.target = target;
+    }
+
+    @Override
+    protected Integer doInBackground() throws Exception {
+        return CsvBookWriter.export(catalog, target, percent -> {
+            setProgress(percent);
+            return !isCancelled();
+        });
+    }
+}
@@ -0,0 +1,54 @@
+import javax.swing.SwingWorker;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+// Imports a CSV file on a worker thread, adding the parsed books to the
+// catalog there in large batches, so indexing them never holds up the Event
+// Dispatch Thread. Each batch reaches the views as one catalog event; the
+// running count of books added is handed to the EDT for progress notes.
+public class BookImportTask extends SwingWorker<Integer, Integer> {
+    private static final int BATCH_SIZE = 10000;
+
+    private final Catalog catalog;
+    private final Path path;
+    private final IntConsumer addedConsumer;
+    private volatile int skippedRows;
+    private volatile int added;
+
+    public BookImportTask(Catalog catalog, Path path, IntConsumer addedConsumer) {
+        this.catalog = catalog;
+        this.path = path;
+        this.addedConsumer = addedConsumer;
+    }
+
+    public int getSkippedRows() {
+        return skippedRows;
+    }
+
+    // Books added so far; rows whose ISBN was already in the catalog are not
+    public int getAdded() {
+        return added;
+    }
+
+    // Returns the number of rows read
+    @Override
+    protected Integer doInBackground() throws Exception {
+        try (CsvBookReader reader = new CsvBookReader(path)) {
+            int read = reader.readInBatches(BATCH_SIZE, batch -> {
+                added += catalog.addAll(batch);
+                publish(added);
+            }, progress -> {
+                setProgress(Math.min(progress, 99));
+                return !isCancelled();
+            });
+            skippedRows = reader.getSkippedRows();
+            return read;
+        }
+    }
+
+    @Override
+    protected void process(List<Integer> counts) {
+        addedConsumer.accept(counts.get(counts.size() - 1));
+    }
+}
@@ -1,7 +1,7 @@
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
-import java.util.List;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ExecutionException;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.time.LocalDate;
@@ -9,14 +9,18 @@ import java.time.format.DateTimeFormatter;
 
 public class BookPanel extends JPanel {
     private JTable bookTable;
-    private DefaultTableModel tableModel;
-    private List<Book> books;
+    private BookTableModel tableModel;
+    private Catalog catalog;
     private JTextField titleField, authorField, isbnField, categoryField, descriptionField;
     private JButton addButton, removeButton, editButton, clearButton, exportButton, importButton;
     private JComboBox<String> categoryCombo;
     private JSpinner yearSpinner;
     private JCheckBox availableCheckBox;
     private JLabel statusLabel;
+    private JLabel metricsLabel;
+    private long lastOperationCount;
+    private BookImportTask importTask;
+    private int editingId = -1;
 
     // Custom colors
     private static final Color PRIMARY_COLOR = new Color(41, 128, 185);    // Blue
@@ -25,27 +29,26 @@ public class BookPanel extends JPanel {
     private static final Color BACKGROUND_COLOR = new Color(236, 240, 241); // Light Gray
     private static final Color TEXT_COLOR = new Color(44, 62, 80);         // Dark Blue
     private static final Color HOVER_COLOR = new Color(52, 73, 94);        // Darker Blue
+    private static final String NOT_SAVED = "Changes are not being saved!";
 
-    public BookPanel(List<Book> books) {
-        this.books = books;
+    public BookPanel(Catalog catalog) {
+        this.catalog = catalog;
         setLayout(new BorderLayout());
         initializeComponents();
-        loadSampleBooks();
+        // Sample books only seed a brand-new library; saved catalogs come from the journal
+        if (catalog.size() == 0) {
+            loadSampleBooks();
+        }
     }
 
     private void initializeComponents() {
         // Create table with custom renderer
-        String[] columns = {"Title", "Author", "ISBN", "Category", "Year", "Available", "Description"};
-        tableModel = new DefaultTableModel(columns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        tableModel = new BookTableModel(catalog, BookTableModel.Column.values());
         bookTable = new JTable(tableModel);
         bookTable.setRowHeight(30);
         bookTable.setFont(new Font("Segoe UI", Font.PLAIN, 12));
         bookTable.getTableHeader().setFont(new Font("Segoe UI", Font.BOLD, 12));
+        tableModel.sortOnHeaderClick(bookTable);
         
         // Add hover effect
         bookTable.addMouseListener(new MouseAdapter() {
@@ -125,6 +128,16 @@ public class BookPanel extends JPanel {
         statusLabel.setForeground(TEXT_COLOR);
         buttonPanel.add(statusLabel);
 
+        // Search latency and overall throughput, refreshed every two seconds;
+        // hovering it lists every operation
+        metricsLabel = new JLabel();
+        metricsLabel.setFont(new Font("Segoe UI", Font.PLAIN, 11));
+        metricsLabel.setForeground(HOVER_COLOR);
+        buttonPanel.add(metricsLabel);
+        Timer metricsTimer = new Timer(2000, e -> updateMetrics());
+        metricsTimer.start();
+        updateMetrics();
+
         // Add action listeners
         addButton.addActionListener(e -> addBook());
         removeButton.addActionListener(e -> removeBook());
@@ -215,7 +228,7 @@ public class BookPanel extends JPanel {
         addBookToList(new Book("1984", "George Orwell", "978-0451524935", "Science Fiction", "A dystopian social science fiction novel"));
         addBookToList(new Book("Dune", "Frank Herbert", "978-0441172719", "Science Fiction", "A science fiction masterpiece"));
         addBookToList(new Book("The Martian", "Andy Weir", "978-0553418026", "Science Fiction", "A survival story on Mars"));
-        addBookToList(new Book("Project Hail Mary", "Andy Weir", "978-1524741331", "Science Fiction", "A space adventure"));
+        addBookToList(new Book("Project Hail Mary", "Andy Weir", "978-1524741334", "Science Fiction", "A space adventure"));
         addBookToList(new Book("Neuromancer", "William Gibson", "978-0441569595", "Science Fiction", "A cyberpunk classic"));
         addBookToList(new Book("Foundation", "Isaac Asimov", "978-0553293357", "Science Fiction", "A space opera"));
         addBookToList(new Book("Ender's Game", "Orson Scott Card", "978-0812550702", "Science Fiction", "A military science fiction novel"));
@@ -226,7 +239,7 @@ public class BookPanel extends JPanel {
         addBookToList(new Book("The Dispossessed", "Ursula K. Le Guin", "978-0060512750", "Science Fiction", "An anarchist utopian novel"));
         addBookToList(new Book("Altered Carbon", "Richard K. Morgan", "978-0345457684", "Science Fiction", "A cyberpunk novel"));
         addBookToList(new Book("The Forever War", "Joe Haldeman", "978-0312536633", "Science Fiction", "A military science fiction novel"));
-        addBookToList(new Book("Children of Time", "Adrian Tchaikovsky", "978-1447273300", "Science Fiction", "A space opera"));
+        addBookToList(new Book("Children of Time", "Adrian Tchaikovsky", "978-1447273301", "Science Fiction", "A space opera"));
         addBookToList(new Book("The Fifth Season", "N.K. Jemisin", "978-0316229296", "Science Fiction", "A fantasy novel"));
         addBookToList(new Book("Ancillary Justice", "Ann Leckie", "978-0316246620", "Science Fiction", "A space opera"));
         addBookToList(new Book("The Windup Girl", "Paolo Bacigalupi", "978-1597808217", "Science Fiction", "A biopunk novel"));
@@ -240,13 +253,13 @@ public class BookPanel extends JPanel {
         addBookToList(new Book("A Game of Thrones", "George R.R. Martin", "978-0553103540", "Fantasy", "The first book in A Song of Ice and Fire"));
         addBookToList(new Book("The Name of the Wind", "Patrick Rothfuss", "978-0756404741", "Fantasy", "A fantasy novel"));
         addBookToList(new Book("The Way of Kings", "Brandon Sanderson", "978-0765326355", "Fantasy", "An epic fantasy novel"));
-        addBookToList(new Book("Mistborn: The Final Empire", "Brandon Sanderson", "978-0765350386", "Fantasy", "A fantasy novel"));
+        addBookToList(new Book("Mistborn: The Final Empire", "Brandon Sanderson", "978-0765350381", "Fantasy", "A fantasy novel"));
         addBookToList(new Book("The Lies of Locke Lamora", "Scott Lynch", "978-0553588941", "Fantasy", "A fantasy novel"));
         addBookToList(new Book("The Eye of the World", "Robert Jordan", "978-0812511819", "Fantasy", "The first book in The Wheel of Time"));
-        addBookToList(new Book("The Blade Itself", "Joe Abercrombie", "978-0575079791", "Fantasy", "A fantasy novel"));
+        addBookToList(new Book("The Blade Itself", "Joe Abercrombie", "978-0575079793", "Fantasy", "A fantasy novel"));
         addBookToList(new Book("The Poppy War", "R.F. Kuang", "978-0062662569", "Fantasy", "A fantasy novel"));
-        addBookToList(new Book("The Priory of the Orange Tree", "Samantha Shannon", "978-1635570299", "Fantasy", "A fantasy novel"));
-        addBookToList(new Book("The Bear and the Nightingale", "Katherine Arden", "978-1101885957", "Fantasy", "A fantasy novel"));
+        addBookToList(new Book("The Priory of the Orange Tree", "Samantha Shannon", "978-1635570298", "Fantasy", "A fantasy novel"));
+        addBookToList(new Book("The Bear and the Nightingale", "Katherine Arden", "978-1101885956", "Fantasy", "A fantasy novel"));
         addBookToList(new Book("The City of Brass", "S.A. Chakraborty", "978-0062678102", "Fantasy", "A fantasy novel"));
         addBookToList(new Book("The Fifth Season", "N.K. Jemisin", "978-0316229296", "Fantasy", "A fantasy novel"));
         addBookToList(new Book("The Grace of Kings", "Ken Liu", "978-1481424271", "Fantasy", "A fantasy novel"));
@@ -258,24 +271,24 @@ public class BookPanel extends JPanel {
         // Mystery (20 books)
         addBookToList(new Book("The Da Vinci Code", "Dan Brown", "978-0307474278", "Mystery", "A mystery thriller novel"));
         addBookToList(new Book("Gone Girl", "Gillian Flynn", "978-0307588364", "Mystery", "A psychological thriller"));
-        addBookToList(new Book("The Girl with the Dragon Tattoo", "Stieg Larsson", "978-0307454541", "Mystery", "A crime thriller"));
+        addBookToList(new Book("The Girl with the Dragon Tattoo", "Stieg Larsson", "978-0307454546", "Mystery", "A crime thriller"));
         addBookToList(new Book("The Silent Patient", "Alex Michaelides", "978-1250301697", "Mystery", "A psychological thriller"));
         addBookToList(new Book("The Thursday Murder Club", "Richard Osman", "978-0241988268", "Mystery", "A cozy mystery"));
         addBookToList(new Book("The Guest List", "Lucy Foley", "978-0062868930", "Mystery", "A thriller novel"));
-        addBookToList(new Book("The Seven Deaths of Evelyn Hardcastle", "Stuart Turton", "978-1492657969", "Mystery", "A mystery novel"));
+        addBookToList(new Book("The Seven Deaths of Evelyn Hardcastle", "Stuart Turton", "978-1492657965", "Mystery", "A mystery novel"));
         addBookToList(new Book("The Last Thing He Told Me", "Laura Dave", "978-1501171345", "Mystery", "A mystery novel"));
         addBookToList(new Book("The Maidens", "Alex Michaelides", "978-1250304452", "Mystery", "A psychological thriller"));
         addBookToList(new Book("The Paris Apartment", "Lucy Foley", "978-0008384807", "Mystery", "A thriller novel"));
-        addBookToList(new Book("The Plot", "Jean Hanff Korelitz", "978-1250790755", "Mystery", "A psychological thriller"));
+        addBookToList(new Book("The Plot", "Jean Hanff Korelitz", "978-1250790750", "Mystery", "A psychological thriller"));
         addBookToList(new Book("The Sanatorium", "Sarah Pearse", "978-0593296677", "Mystery", "A thriller novel"));
-        addBookToList(new Book("The Push", "Ashley Audrain", "978-0525657601", "Mystery", "A psychological thriller"));
-        addBookToList(new Book("The Last House on Needless Street", "Catriona Ward", "978-1250812624", "Mystery", "A psychological thriller"));
+        addBookToList(new Book("The Push", "Ashley Audrain", "978-0525657606", "Mystery", "A psychological thriller"));
+        addBookToList(new Book("The Last House on Needless Street", "Catriona Ward", "978-1250812629", "Mystery", "A psychological thriller"));
         addBookToList(new Book("The Other Black Girl", "Zakiya Dalila Harris", "978-1982160135", "Mystery", "A thriller novel"));
         addBookToList(new Book("The Final Girl Support Group", "Grady Hendrix", "978-0593201237", "Mystery", "A horror novel"));
         addBookToList(new Book("The Night She Disappeared", "Lisa Jewell", "978-1982137335", "Mystery", "A thriller novel"));
-        addBookToList(new Book("The Last Thing to Burn", "Will Dean", "978-0316703484", "Mystery", "A thriller novel"));
-        addBookToList(new Book("The Therapist", "B.A. Paris", "978-1250270797", "Mystery", "A psychological thriller"));
-        addBookToList(new Book("The Perfect Marriage", "Jeneva Rose", "978-1950057317", "Mystery", "A thriller novel"));
+        addBookToList(new Book("The Last Thing to Burn", "Will Dean", "978-0316703482", "Mystery", "A thriller novel"));
+        addBookToList(new Book("The Therapist", "B.A. Paris", "978-1250270795", "Mystery", "A psychological thriller"));
+        addBookToList(new Book("The Perfect Marriage", "Jeneva Rose", "978-1950057313", "Mystery", "A thriller novel"));
 
         // Biography (10 books)
         addBookToList(new Book("Steve Jobs", "Walter Isaacson", "978-1451648539", "Biography", "The biography of Apple's co-founder"));
@@ -296,23 +309,16 @@ public class BookPanel extends JPanel {
         addBookToList(new Book("A People's History of the United States", "Howard Zinn", "978-0062397348", "History", "A history of the United States"));
         addBookToList(new Book("The Guns of August", "Barbara W. Tuchman", "978-0345476098", "History", "The outbreak of World War I"));
         addBookToList(new Book("The Silk Roads", "Peter Frankopan", "978-1101912379", "History", "A new history of the world"));
-        addBookToList(new Book("SPQR", "Mary Beard", "978-0871404637", "History", "A history of ancient Rome"));
+        addBookToList(new Book("SPQR", "Mary Beard", "978-0871404633", "History", "A history of ancient Rome"));
         addBookToList(new Book("The Crusades", "Thomas Asbridge", "978-0060787288", "History", "The authoritative history of the war for the Holy Land"));
         addBookToList(new Book("The Plantagenets", "Dan Jones", "978-0143124924", "History", "The warrior kings and queens who made England"));
         addBookToList(new Book("The Romanovs", "Simon Sebag Montefiore", "978-0307266521", "History", "1613-1918"));
     }
 
+    // The table follows the catalog's events. A book whose ISBN is already in
+    // the catalog is skipped.
     private void addBookToList(Book book) {
-        books.add(book);
-        tableModel.addRow(new Object[]{
-            book.getTitle(),
-            book.getAuthor(),
-            book.getIsbn(),
-            book.getCategory(),
-            book.getYear(),
-            book.isAvailable() ? "Yes" : "No",
-            book.getDescription()
-        });
+        catalog.add(book);
     }
 
     private void addBook() {
@@ -324,45 +330,41 @@ public class BookPanel extends JPanel {
         int year = (Integer) yearSpinner.getValue();
         boolean available = availableCheckBox.isSelected();
 
-        // Validate input
-        if (title.isEmpty()) {
-            JOptionPane.showMessageDialog(this, "Please enter a title!", "Error", JOptionPane.ERROR_MESSAGE);
-            titleField.requestFocus();
-            return;
+        if (catalog.get(editingId) == null) {
+            editingId = -1;
         }
-        if (author.isEmpty()) {
-            JOptionPane.showMessageDialog(this, "Please enter an author!", "Error", JOptionPane.ERROR_MESSAGE);
-            authorField.requestFocus();
-            return;
-        }
-        if (isbn.isEmpty()) {
-            JOptionPane.showMessageDialog(this, "Please enter an ISBN!", "Error", JOptionPane.ERROR_MESSAGE);
-            isbnField.requestFocus();
-            return;
-        }
-        if (category == null || category.isEmpty()) {
-            JOptionPane.showMessageDialog(this, "Please select a category!", "Error", JOptionPane.ERROR_MESSAGE);
-            categoryCombo.requestFocus();
+
+        Book newBook = new Book(title, author, isbn, category, description, year, available);
+        BookValidator.Problem problem = BookValidator.validate(catalog, newBook, editingId);
+        if (problem != null) {
+            JOptionPane.showMessageDialog(this, problem.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            focusField(problem).requestFocus();
             return;
         }
 
-        // Check if ISBN already exists
-        for (Book book : books) {
-            if (book.getIsbn().equals(isbn)) {
-                JOptionPane.showMessageDialog(this, 
-                    "A book with this ISBN already exists!", 
-                    "Error", 
+        try {
+            if (editingId >= 0) {
+                if (!catalog.update(editingId, newBook)) {
+                    // The book went, or another took its ISBN, since the checks above
+                    String message = catalog.get(editingId) == null
+                        ? "This book was removed while you were editing it!"
+                        : BookValidator.Problem.DUPLICATE_ISBN.getMessage();
+                    JOptionPane.showMessageDialog(this, message, "Error", JOptionPane.ERROR_MESSAGE);
+                    updateStatus("Book not updated");
+                    return;
+                }
+                clearFields();
+                reportSaved("Book updated successfully!");
+                return;
+            }
+            if (catalog.add(newBook) < 0) {
+                JOptionPane.showMessageDialog(this, BookValidator.Problem.DUPLICATE_ISBN.getMessage(), "Error",
                     JOptionPane.ERROR_MESSAGE);
-                isbnField.requestFocus();
+                updateStatus("Book not added");
                 return;
             }
-        }
-
-        try {
-            Book newBook = new Book(title, author, isbn, category, description, year, available);
-            addBookToList(newBook);
             clearFields();
-            updateStatus("Book added successfully!");
+            reportSaved("Book added successfully!");
         } catch (Exception e) {
             JOptionPane.showMessageDialog(this, 
                 "Error adding book: " + e.getMessage(), 
@@ -371,6 +373,15 @@ public class BookPanel extends JPanel {
         }
     }
 
+    private JComponent focusField(BookValidator.Problem problem) {
+        switch (problem) {
+            case MISSING_TITLE: return titleField;
+            case MISSING_AUTHOR: return authorField;
+            case MISSING_CATEGORY: return categoryCombo;
+            default: return isbnField;
+        }
+    }
+
     private void removeBook() {
         int selectedRow = bookTable.getSelectedRow();
         if (selectedRow == -1) {
@@ -384,9 +395,14 @@ public class BookPanel extends JPanel {
             JOptionPane.YES_NO_OPTION);
             
         if (confirm == JOptionPane.YES_OPTION) {
-            books.remove(selectedRow);
-            tableModel.removeRow(selectedRow);
-            updateStatus("Book removed successfully!");
+            try {
+                catalog.remove(tableModel.getIdAt(selectedRow));
+            } catch (UncheckedIOException e) {
+                JOptionPane.showMessageDialog(this, "Error removing book: " + e.getMessage(), "Error",
+                    JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            reportSaved("Book removed successfully!");
         }
     }
 
@@ -397,7 +413,9 @@ public class BookPanel extends JPanel {
             return;
         }
 
-        Book book = books.get(selectedRow);
+        // The book stays in place; adding with the form saves it back under the same id
+        editingId = tableModel.getIdAt(selectedRow);
+        Book book = catalog.get(editingId);
         titleField.setText(book.getTitle());
         authorField.setText(book.getAuthor());
         isbnField.setText(book.getIsbn());
@@ -405,13 +423,11 @@ public class BookPanel extends JPanel {
         descriptionField.setText(book.getDescription());
         yearSpinner.setValue(book.getYear());
         availableCheckBox.setSelected(book.isAvailable());
-
-        books.remove(selectedRow);
-        tableModel.removeRow(selectedRow);
         updateStatus("Book loaded for editing!");
     }
 
     private void clearFields() {
+        editingId = -1;
         titleField.setText("");
         authorField.setText("");
         isbnField.setText("");
@@ -428,8 +444,46 @@ public class BookPanel extends JPanel {
         fileChooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("CSV Files", "csv"));
         
         if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-            // TODO: Implement book export functionality
-            updateStatus("Books exported successfully!");
+            java.io.File file = fileChooser.getSelectedFile();
+            if (!file.getName().toLowerCase().endsWith(".csv")) {
+                file = new java.io.File(file.getParentFile(), file.getName() + ".csv");
+            }
+            ProgressMonitor monitor = new ProgressMonitor(this, "Exporting books...", null, 0, 100);
+            monitor.setMillisToDecideToPopup(200);
+            exportButton.setEnabled(false);
+            updateStatus("Exporting books...");
+
+            BookExportTask exportTask = new BookExportTask(catalog, file.toPath());
+            exportTask.addPropertyChangeListener(evt -> {
+                if ("progress".equals(evt.getPropertyName())) {
+                    monitor.setProgress((Integer) evt.getNewValue());
+                    if (monitor.isCanceled()) {
+                        exportTask.cancel(false);
+                    }
+                } else if (exportTask.isDone()) {
+                    monitor.close();
+                    exportButton.setEnabled(true);
+                    finishExport(exportTask);
+                }
+            });
+            exportTask.execute();
+        }
+    }
+
+    private void finishExport(BookExportTask exportTask) {
+        if (exportTask.isCancelled()) {
+            updateStatus("Export cancelled");
+            return;
+        }
+        try {
+            updateStatus(exportTask.get() + " books exported successfully!");
+        } catch (InterruptedException | ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            JOptionPane.showMessageDialog(this,
+                "Error exporting books: " + cause.getMessage(),
+                "Error",
+                JOptionPane.ERROR_MESSAGE);
+            updateStatus("Export failed");
         }
     }
 
@@ -439,14 +493,96 @@ public class BookPanel extends JPanel {
         fileChooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("CSV Files", "csv"));
         
         if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            // TODO: Implement book import functionality
-            updateStatus("Books imported successfully!");
+            ProgressMonitor monitor = new ProgressMonitor(this, "Importing books...", null, 0, 100);
+            monitor.setMillisToDecideToPopup(200);
+            importButton.setEnabled(false);
+            updateStatus("Importing books...");
+
+            importTask = new BookImportTask(catalog, fileChooser.getSelectedFile().toPath(),
+                added -> monitor.setNote(added + " books imported"));
+            importTask.addPropertyChangeListener(evt -> {
+                if ("progress".equals(evt.getPropertyName())) {
+                    monitor.setProgress((Integer) evt.getNewValue());
+                    if (monitor.isCanceled()) {
+                        importTask.cancel(false);
+                    }
+                } else if (importTask.isDone()) {
+                    monitor.close();
+                    importButton.setEnabled(true);
+                    finishImport(importTask.getAdded());
+                }
+            });
+            importTask.execute();
+        }
+    }
+
+    private void finishImport(int imported) {
+        if (importTask.isCancelled()) {
+            updateStatus("Import cancelled after " + imported + " books");
+            return;
         }
+        try {
+            int skipped = importTask.getSkippedRows() + importTask.get() - imported;
+            reportSaved(imported + " books imported successfully!" + (skipped > 0 ? " (" + skipped + " rows skipped)" : ""));
+        } catch (InterruptedException | ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            JOptionPane.showMessageDialog(this,
+                "Error importing books: " + cause.getMessage(),
+                "Error",
+                JOptionPane.ERROR_MESSAGE);
+            updateStatus("Import failed after " + imported + " books");
+        }
+    }
+
+    private void updateMetrics() {
+        CatalogMetrics metrics = catalog.getMetrics();
+        LatencyHistogram search = metrics.get(CatalogMetrics.Operation.SEARCH);
+        StringBuilder details = new StringBuilder("<html><table><tr><th align=left>Operation</th>"
+            + "<th>Count</th><th>p50</th><th>p99</th><th>Max</th></tr>");
+        long operations = 0;
+        for (CatalogMetrics.Operation operation : CatalogMetrics.Operation.values()) {
+            LatencyHistogram histogram = metrics.get(operation);
+            long count = histogram.getCount();
+            operations += count;
+            if (count > 0) {
+                details.append("<tr><td>").append(operation.getTitle())
+                    .append("</td><td align=right>").append(count)
+                    .append("</td><td align=right>").append(CatalogMetrics.format(histogram.percentile(0.5)))
+                    .append("</td><td align=right>").append(CatalogMetrics.format(histogram.percentile(0.99)))
+                    .append("</td><td align=right>").append(CatalogMetrics.format(histogram.getMax()))
+                    .append("</td></tr>");
+            }
+        }
+        details.append("</table></html>");
+        long perSecond = Math.max(0, operations - lastOperationCount) / 2;
+        lastOperationCount = operations;
+        metricsLabel.setText(search.getCount() == 0
+            ? perSecond + " ops/s"
+            : String.format("Search p50 %s, p99 %s | %d ops/s",
+                CatalogMetrics.format(search.percentile(0.5)), CatalogMetrics.format(search.percentile(0.99)), perSecond));
+        metricsLabel.setToolTipText(details.toString());
+    }
+
+    // Shows message once the change is in the catalog's journal, or the
+    // journal's error if it never gets there
+    private void reportSaved(String message) {
+        catalog.whenSaved().whenComplete((saved, error) -> SwingUtilities.invokeLater(() -> {
+            if (error == null) {
+                updateStatus(message);
+                return;
+            }
+            statusLabel.setText(NOT_SAVED);
+            JOptionPane.showMessageDialog(this,
+                "The catalog could not be saved: " + error.getMessage()
+                    + "\nFurther changes will be refused until the library is restarted.",
+                "Error",
+                JOptionPane.ERROR_MESSAGE);
+        }));
     }
 
     private void updateStatus(String message) {
         statusLabel.setText(message);
-        Timer timer = new Timer(3000, e -> statusLabel.setText("Ready"));
+        Timer timer = new Timer(3000, e -> statusLabel.setText(catalog.getJournalFailure() == null ? "Ready" : NOT_SAVED));
         timer.setRepeats(false);
         timer.start();
     }
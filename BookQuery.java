@@ -0,0 +1,330 @@
+import java.util.Arrays;
+
+// A filter over several fields at once, built from predicates combined with
+// and/or, for example
+//   and(available(), category("Science Fiction"), yearBetween(2015, 2020),
+//       contains(Field.AUTHOR, "weir"))
+// Catalog.search plans it against the search indexes. Each part estimates how
+// many books its index would hand back. An and takes the ids from its most
+// selective part and only checks those against the rest; an or unions its
+// parts when all of them can use an index. Anything else scans the catalog.
+public abstract class BookQuery {
+    // Estimate of a part that no index can answer
+    public static final int UNINDEXED = Integer.MAX_VALUE;
+
+    // Whether the book stored under id, which must be live, satisfies the query
+    public abstract boolean matches(BookStore store, int id);
+
+    // Upper bound on the ids the indexes would return, or UNINDEXED
+    abstract int estimate(BookSearchIndex index);
+
+    // Ids of the matching books in id order, every id handed out being below
+    // idBound. Catalog.search only calls it when estimate is not UNINDEXED.
+    abstract int[] lookup(BookSearchIndex index, int idBound);
+
+    // Text that two queries share only when they match the same books, for
+    // caching results. Strings carry their length, so no text can pass for structure.
+    abstract String key();
+
+    // Whether checking out or returning a book can change the matches
+    boolean readsAvailability() {
+        return false;
+    }
+
+    // Title, author, ISBN or category contains the text, ignoring case
+    public static BookQuery contains(BookSearchIndex.Field field, String text) {
+        return new Contains(field, NGramIndex.fold(text));
+    }
+
+    // Category is exactly this one, ignoring case
+    public static BookQuery category(String category) {
+        return new CategoryIs(category);
+    }
+
+    // Published between from and to, both included
+    public static BookQuery yearBetween(int from, int to) {
+        return new YearBetween(from, to);
+    }
+
+    public static BookQuery available() {
+        return new Available();
+    }
+
+    public static BookQuery and(BookQuery... parts) {
+        return parts.length == 1 ? parts[0] : new And(parts);
+    }
+
+    public static BookQuery or(BookQuery... parts) {
+        return parts.length == 1 ? parts[0] : new Or(parts);
+    }
+
+    private static String joinKeys(String operator, BookQuery[] parts) {
+        StringBuilder key = new StringBuilder(operator).append('(');
+        for (BookQuery part : parts) {
+            key.append(part.key()).append(';');
+        }
+        return key.append(')').toString();
+    }
+
+    private static boolean anyReadsAvailability(BookQuery[] parts) {
+        for (BookQuery part : parts) {
+            if (part.readsAvailability()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Contains extends BookQuery {
+        private final BookSearchIndex.Field field;
+        private final String folded;
+
+        Contains(BookSearchIndex.Field field, String folded) {
+            this.field = field;
+            this.folded = folded;
+        }
+
+        @Override
+        public boolean matches(BookStore store, int id) {
+            return NGramIndex.containsFolded(BookSearchIndex.value(store, id, field), folded);
+        }
+
+        @Override
+        int estimate(BookSearchIndex index) {
+            return index.estimate(field, folded);
+        }
+
+        @Override
+        int[] lookup(BookSearchIndex index, int idBound) {
+            return index.lookup(field, folded);
+        }
+
+        @Override
+        String key() {
+            return "contains " + field + " " + folded.length() + ":" + folded;
+        }
+    }
+
+    private static final class CategoryIs extends BookQuery {
+        private final String category;
+
+        CategoryIs(String category) {
+            this.category = category;
+        }
+
+        @Override
+        public boolean matches(BookStore store, int id) {
+            return store.getCategory(id).equalsIgnoreCase(category);
+        }
+
+        @Override
+        int estimate(BookSearchIndex index) {
+            return index.estimateCategory(category);
+        }
+
+        @Override
+        int[] lookup(BookSearchIndex index, int idBound) {
+            return index.lookupCategory(category);
+        }
+
+        @Override
+        String key() {
+            return "category " + category.length() + ":" + category;
+        }
+    }
+
+    private static final class YearBetween extends BookQuery {
+        private final int from;
+        private final int to;
+
+        YearBetween(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean matches(BookStore store, int id) {
+            int year = store.getYear(id);
+            return year >= from && year <= to;
+        }
+
+        @Override
+        int estimate(BookSearchIndex index) {
+            return index.estimateYears(from, to);
+        }
+
+        @Override
+        int[] lookup(BookSearchIndex index, int idBound) {
+            return index.lookupYears(from, to);
+        }
+
+        @Override
+        String key() {
+            return "years " + from + " " + to;
+        }
+    }
+
+    // Availability changes with every checkout, so it is checked, never
+    // indexed; its own ids take a scan of the catalog
+    private static final class Available extends BookQuery {
+        @Override
+        public boolean matches(BookStore store, int id) {
+            return store.isAvailable(id);
+        }
+
+        @Override
+        int estimate(BookSearchIndex index) {
+            return UNINDEXED;
+        }
+
+        @Override
+        int[] lookup(BookSearchIndex index, int idBound) {
+            return index.scanAvailable(idBound);
+        }
+
+        @Override
+        String key() {
+            return "available";
+        }
+
+        @Override
+        boolean readsAvailability() {
+            return true;
+        }
+    }
+
+    private static final class And extends BookQuery {
+        private final BookQuery[] parts;
+
+        And(BookQuery[] parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public boolean matches(BookStore store, int id) {
+            for (BookQuery part : parts) {
+                if (!part.matches(store, id)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        int estimate(BookSearchIndex index) {
+            int best = UNINDEXED;
+            for (BookQuery part : parts) {
+                best = Math.min(best, part.estimate(index));
+            }
+            return best;
+        }
+
+        // The most selective part drives; the others only check its ids
+        @Override
+        int[] lookup(BookSearchIndex index, int idBound) {
+            int driver = 0;
+            int best = UNINDEXED;
+            for (int i = 0; i < parts.length; i++) {
+                int estimate = parts[i].estimate(index);
+                if (estimate < best) {
+                    best = estimate;
+                    driver = i;
+                }
+            }
+            int[] ids = parts[driver].lookup(index, idBound);
+            BookStore store = index.getStore();
+            int count = 0;
+            for (int id : ids) {
+                boolean match = true;
+                for (int i = 0; i < parts.length && match; i++) {
+                    match = i == driver || parts[i].matches(store, id);
+                }
+                if (match) {
+                    ids[count++] = id;
+                }
+            }
+            return count == ids.length ? ids : Arrays.copyOf(ids, count);
+        }
+
+        @Override
+        String key() {
+            return joinKeys("and", parts);
+        }
+
+        @Override
+        boolean readsAvailability() {
+            return anyReadsAvailability(parts);
+        }
+    }
+
+    private static final class Or extends BookQuery {
+        private final BookQuery[] parts;
+
+        Or(BookQuery[] parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public boolean matches(BookStore store, int id) {
+            for (BookQuery part : parts) {
+                if (part.matches(store, id)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // One part without an index means every book has to be checked anyway
+        @Override
+        int estimate(BookSearchIndex index) {
+            long total = 0;
+            for (BookQuery part : parts) {
+                int estimate = part.estimate(index);
+                if (estimate == UNINDEXED) {
+                    return UNINDEXED;
+                }
+                total += estimate;
+            }
+            return (int) Math.min(total, UNINDEXED - 1);
+        }
+
+        @Override
+        int[] lookup(BookSearchIndex index, int idBound) {
+            int[] result = new int[0];
+            for (BookQuery part : parts) {
+                result = union(result, part.lookup(index, idBound));
+            }
+            return result;
+        }
+
+        @Override
+        String key() {
+            return joinKeys("or", parts);
+        }
+
+        @Override
+        boolean readsAvailability() {
+            return anyReadsAvailability(parts);
+        }
+
+        private static int[] union(int[] a, int[] b) {
+            int[] merged = new int[a.length + b.length];
+            int i = 0, j = 0, k = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i] == b[j]) {
+                    merged[k++] = a[i++];
+                    j++;
+                } else {
+                    merged[k++] = a[i] < b[j] ? a[i++] : b[j++];
+                }
+            }
+            while (i < a.length) {
+                merged[k++] = a[i++];
+            }
+            while (j < b.length) {
+                merged[k++] = b[j++];
+            }
+            return k == merged.length ? merged : Arrays.copyOf(merged, k);
+        }
+    }
+}
@@ -0,0 +1,463 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+
+// Search indexes for the fields the search panel can query. Title, author and
+// ISBN use trigram indexes; category has only a handful of distinct values, so
+// it keeps one id list per category and matches the query against the names.
+// Years are indexed by an id list per year in a sorted map, so a range of
+// years is a handful of lists. BookQuery plans multi-field queries on these.
+// Titles and authors also keep a FuzzyIndex of their words for typo-tolerant search,
+// and descriptions a DescriptionIndex for relevance-ranked full-text search.
+// The catalog keeps these up to date on every add, edit and remove.
+// A catalog opened from a snapshot defers indexing and catches up in chunks
+// from a background thread, in id order; until it is done, searches scan.
+// Scans run through ParallelScan, split across cores on large catalogs.
+public class BookSearchIndex {
+    public enum Field { TITLE, AUTHOR, CATEGORY, ISBN }
+
+    private final BookStore store;
+    private final NGramIndex titles = new NGramIndex();
+    private final NGramIndex authors = new NGramIndex();
+    private final NGramIndex isbns = new NGramIndex();
+    private final Map<String, IdList> categories = new HashMap<>();
+    private final NavigableMap<Integer, IdList> years = new TreeMap<>();
+    private final FuzzyIndex titleWords = new FuzzyIndex();
+    private final FuzzyIndex authorWords = new FuzzyIndex();
+    private final DescriptionIndex descriptions = new DescriptionIndex();
+    private boolean deferring;
+    private int deferredFrom; // while deferring, ids from here up are not indexed yet
+
+    // Reads go straight to the catalog's store: the catalog calls in while
+    // holding its lock, and that lock is not reentrant
+    public BookSearchIndex(BookStore store) {
+        this.store = store;
+    }
+
+    public void add(int id, Book book) {
+        if (!isDeferred(id)) {
+            add(id, book.getTitle(), book.getAuthor(), book.getIsbn(), book.getCategory(), book.getYear(),
+                book.getDescription());
+        }
+    }
+
+    private void add(int id, String title, String author, String isbn, String category, int year,
+                     String description) {
+        titles.add(id, title);
+        authors.add(id, author);
+        isbns.add(id, isbn);
+        titleWords.add(id, title);
+        authorWords.add(id, author);
+        descriptions.add(id, description);
+        addTo(categories, category, id);
+        addTo(years, year, id);
+    }
+
+    public void remove(int id, Book book) {
+        if (isDeferred(id)) {
+            return;
+        }
+        titles.remove(id, book.getTitle());
+        authors.remove(id, book.getAuthor());
+        isbns.remove(id, book.getIsbn());
+        titleWords.remove(id, book.getTitle());
+        authorWords.remove(id, book.getAuthor());
+        descriptions.remove(id, book.getDescription());
+        removeFrom(categories, book.getCategory(), id);
+        removeFrom(years, book.getYear(), id);
+    }
+
+    // Reindexes only the fields that changed; the trigram indexes only the
+    // trigrams that did
+    public void update(int id, Book oldBook, Book newBook) {
+        if (isDeferred(id)) {
+            return;
+        }
+        titles.update(id, oldBook.getTitle(), newBook.getTitle());
+        authors.update(id, oldBook.getAuthor(), newBook.getAuthor());
+        isbns.update(id, oldBook.getIsbn(), newBook.getIsbn());
+        if (!oldBook.getTitle().equals(newBook.getTitle())) {
+            titleWords.remove(id, oldBook.getTitle());
+            titleWords.add(id, newBook.getTitle());
+        }
+        if (!oldBook.getAuthor().equals(newBook.getAuthor())) {
+            authorWords.remove(id, oldBook.getAuthor());
+            authorWords.add(id, newBook.getAuthor());
+        }
+        if (!oldBook.getDescription().equals(newBook.getDescription())) {
+            descriptions.remove(id, oldBook.getDescription());
+            descriptions.add(id, newBook.getDescription());
+        }
+        if (!oldBook.getCategory().equals(newBook.getCategory())) {
+            removeFrom(categories, oldBook.getCategory(), id);
+            addTo(categories, newBook.getCategory(), id);
+        }
+        if (oldBook.getYear() != newBook.getYear()) {
+            removeFrom(years, oldBook.getYear(), id);
+            addTo(years, newBook.getYear(), id);
+        }
+    }
+
+    private static <K> void addTo(Map<K, IdList> lists, K key, int id) {
+        IdList list = lists.get(key);
+        if (list == null) {
+            list = new IdList();
+            lists.put(key, list);
+        }
+        list.add(id);
+    }
+
+    private static <K> void removeFrom(Map<K, IdList> lists, K key, int id) {
+        IdList list = lists.get(key);
+        if (list != null) {
+            list.remove(id);
+            if (list.size() == 0) {
+                lists.remove(key);
+            }
+        }
+    }
+
+    // Leaves every book out of the indexes until indexDeferred reaches it.
+    // Indexing strictly in id order keeps every posting list add an append.
+    public void defer() {
+        deferring = true;
+        deferredFrom = 0;
+    }
+
+    // Indexes up to limit deferred ids below idBound, reading them from the
+    // store as they are now. Returns false once the indexes have caught up.
+    public boolean indexDeferred(int limit, int idBound) {
+        if (!deferring) {
+            return false;
+        }
+        int end = Math.min(idBound, deferredFrom + limit);
+        for (int id = deferredFrom; id < end; id++) {
+            if (store.contains(id)) {
+                add(id, store.getTitle(id), store.getAuthor(id), store.getIsbn(id), store.getCategory(id),
+                    store.getYear(id), store.getDescription(id));
+            }
+        }
+        deferredFrom = end;
+        deferring = end < idBound;
+        return deferring;
+    }
+
+    private boolean isDeferred(int id) {
+        return deferring && id >= deferredFrom;
+    }
+
+    // Ids of the books whose field contains the query, ignoring case, in id
+    // order. Every id handed out so far is below idBound.
+    public int[] search(Field field, String query, int idBound) {
+        return search(BookQuery.contains(field, query), idBound);
+    }
+
+    // Ids of the books matching the query, in id order, using the indexes the
+    // query picks; without a usable index every book is checked
+    public int[] search(BookQuery query, int idBound) {
+        return search(query, Integer.MAX_VALUE, idBound);
+    }
+
+    // The first limit of those; a scan stops once it has them
+    public int[] search(BookQuery query, int limit, int idBound) {
+        if (deferring || query.estimate(this) == BookQuery.UNINDEXED) {
+            return scan(id -> query.matches(store, id), limit, idBound);
+        }
+        int[] ids = query.lookup(this, idBound);
+        return ids.length > limit ? Arrays.copyOf(ids, limit) : ids;
+    }
+
+    // Ids of the books whose title or author words are within a few typos of
+    // every word of the query and that match the filter, closest first
+    public int[] searchFuzzy(Field field, String query, BookQuery filter, int idBound) {
+        String folded = NGramIndex.fold(query);
+        if (deferring) {
+            return scanFuzzy(field, folded, filter, idBound);
+        }
+        int[] ranked = fuzzyIndex(field).search(folded);
+        int count = 0;
+        for (int id : ranked) {
+            if (filter.matches(store, id)) {
+                ranked[count++] = id;
+            }
+        }
+        return count == ranked.length ? ranked : Arrays.copyOf(ranked, count);
+    }
+
+    private int[] scanFuzzy(Field field, String folded, BookQuery filter, int idBound) {
+        String[] queryWords = FuzzyIndex.words(folded);
+        if (queryWords.length == 0) {
+            return new int[0];
+        }
+        List<long[]> parts = ParallelScan.map(idBound, (first, end) -> {
+            long[] keys = new long[16];
+            int count = 0;
+            for (int id = first; id < end; id++) {
+                if (!store.contains(id) || !filter.matches(store, id)) {
+                    continue;
+                }
+                int distance = FuzzyIndex.distance(queryWords, NGramIndex.fold(value(store, id, field)));
+                if (distance >= 0) {
+                    if (count == keys.length) {
+                        keys = Arrays.copyOf(keys, count * 2);
+                    }
+                    keys[count++] = FuzzyIndex.rankKey(id, distance);
+                }
+            }
+            return Arrays.copyOf(keys, count);
+        });
+        int count = 0;
+        for (long[] part : parts) {
+            count += part.length;
+        }
+        long[] keys = new long[count];
+        count = 0;
+        for (long[] part : parts) {
+            System.arraycopy(part, 0, keys, count, part.length);
+            count += part.length;
+        }
+        return FuzzyIndex.ranked(keys, count);
+    }
+
+    // Ids of the books whose descriptions best match the words of the query
+    // and that match the filter, at most limit of them, most relevant first
+    public int[] searchDescriptions(String query, int limit, BookQuery filter, int idBound) {
+        String folded = NGramIndex.fold(query);
+        if (deferring) {
+            return scanDescriptions(folded, limit, filter, idBound);
+        }
+        return descriptions.search(folded, limit, id -> filter.matches(store, id));
+    }
+
+    // Scores every description the way the index would. The word statistics
+    // cover the whole catalog, so every description is read before any scoring.
+    private int[] scanDescriptions(String folded, int limit, BookQuery filter, int idBound) {
+        String[] queryWords = new LinkedHashSet<>(Arrays.asList(FuzzyIndex.words(folded))).toArray(new String[0]);
+        List<DescriptionScan> parts = ParallelScan.map(idBound, (first, end) -> {
+            DescriptionScan part = new DescriptionScan(queryWords.length);
+            for (int id = first; id < end; id++) {
+                if (store.contains(id)) {
+                    part.add(id, store.getDescription(id), queryWords);
+                }
+            }
+            return part;
+        });
+        int[] withWord = new int[queryWords.length];
+        List<int[]> matches = new ArrayList<>();
+        int documents = 0;
+        long totalLength = 0;
+        for (DescriptionScan part : parts) {
+            for (int i = 0; i < withWord.length; i++) {
+                withWord[i] += part.withWord[i];
+            }
+            matches.addAll(part.matches);
+            documents += part.documents;
+            totalLength += part.totalLength;
+        }
+
+        DescriptionIndex.TopScores top = new DescriptionIndex.TopScores(Math.min(limit, matches.size()));
+        double averageLength = (double) totalLength / Math.max(documents, 1);
+        for (int[] match : matches) {
+            double score = 0;
+            for (int i = 0; i < queryWords.length; i++) {
+                if (match[i + 2] > 0) {
+                    score += DescriptionIndex.idf(withWord[i], documents)
+                        * DescriptionIndex.termScore(match[i + 2], match[1], averageLength);
+                }
+            }
+            if (top.accepts(score, match[0]) && filter.matches(store, match[0])) {
+                top.add(score, match[0]);
+            }
+        }
+        return top.ids();
+    }
+
+    // The word statistics of a run of descriptions and the ones using a query word
+    private static final class DescriptionScan {
+        final int[] withWord;
+        final List<int[]> matches = new ArrayList<>(); // id, length, then the count of each query word
+        int documents;
+        long totalLength;
+
+        DescriptionScan(int queryWords) {
+            withWord = new int[queryWords];
+        }
+
+        void add(int id, String description, String[] queryWords) {
+            String[] words = FuzzyIndex.words(NGramIndex.fold(description));
+            documents++;
+            totalLength += words.length;
+            Map<String, Integer> counts = DescriptionIndex.countWords(words);
+            int[] match = null;
+            for (int i = 0; i < queryWords.length; i++) {
+                Integer count = counts.get(queryWords[i]);
+                if (count != null) {
+                    if (match == null) {
+                        match = new int[queryWords.length + 2];
+                        match[0] = id;
+                        match[1] = words.length;
+                    }
+                    match[i + 2] = count;
+                    withWord[i]++;
+                }
+            }
+            if (match != null) {
+                matches.add(match);
+            }
+        }
+    }
+
+    private FuzzyIndex fuzzyIndex(Field field) {
+        switch (field) {
+            case TITLE: return titleWords;
+            case AUTHOR: return authorWords;
+            default: throw new IllegalArgumentException("No fuzzy search on " + field);
+        }
+    }
+
+    BookStore getStore() {
+        return store;
+    }
+
+    // Queries too short for a trigram cannot use an index
+    int estimate(Field field, String folded) {
+        if (folded.isEmpty()) {
+            return BookQuery.UNINDEXED;
+        }
+        if (field == Field.CATEGORY) {
+            int total = 0;
+            for (Map.Entry<String, IdList> entry : categories.entrySet()) {
+                if (NGramIndex.containsFolded(entry.getKey(), folded)) {
+                    total += entry.getValue().size();
+                }
+            }
+            return total;
+        }
+        int estimate = index(field).estimate(folded);
+        return estimate < 0 ? BookQuery.UNINDEXED : estimate;
+    }
+
+    int[] lookup(Field field, String folded) {
+        if (field == Field.CATEGORY) {
+            return searchCategories(folded);
+        }
+        int[] candidates = index(field).candidates(folded);
+        int count = 0;
+        for (int id : candidates) {
+            if (NGramIndex.containsFolded(value(store, id, field), folded)) {
+                candidates[count++] = id;
+            }
+        }
+        return count == candidates.length ? candidates : Arrays.copyOf(candidates, count);
+    }
+
+    int estimateCategory(String category) {
+        int total = 0;
+        for (Map.Entry<String, IdList> entry : categories.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(category)) {
+                total += entry.getValue().size();
+            }
+        }
+        return total;
+    }
+
+    int[] lookupCategory(String category) {
+        int[] result = new int[0];
+        for (Map.Entry<String, IdList> entry : categories.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(category)) {
+                result = merge(result, entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    int estimateYears(int from, int to) {
+        if (from > to) {
+            return 0;
+        }
+        int total = 0;
+        for (IdList list : years.subMap(from, true, to, true).values()) {
+            total += list.size();
+        }
+        return total;
+    }
+
+    // The year lists hold disjoint ids, so they are copied side by side and sorted once
+    int[] lookupYears(int from, int to) {
+        int[] result = new int[estimateYears(from, to)];
+        if (result.length == 0) {
+            return result;
+        }
+        int count = 0;
+        for (IdList list : years.subMap(from, true, to, true).values()) {
+            count = list.copyTo(result, count);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    // Reads the field straight from the store without building a Book
+    static String value(BookStore store, int id, Field field) {
+        switch (field) {
+            case TITLE: return store.getTitle(id);
+            case AUTHOR: return store.getAuthor(id);
+            case CATEGORY: return store.getCategory(id);
+            case ISBN: return store.getIsbn(id);
+            default: return "";
+        }
+    }
+
+    private NGramIndex index(Field field) {
+        switch (field) {
+            case TITLE: return titles;
+            case AUTHOR: return authors;
+            default: return isbns;
+        }
+    }
+
+    private int[] searchCategories(String folded) {
+        List<IdList> matching = new ArrayList<>();
+        for (Map.Entry<String, IdList> entry : categories.entrySet()) {
+            if (NGramIndex.containsFolded(entry.getKey(), folded)) {
+                matching.add(entry.getValue());
+            }
+        }
+        int[] result = new int[0];
+        for (IdList list : matching) {
+            result = merge(result, list);
+        }
+        return result;
+    }
+
+    // Checks every book. A scan gives up early when its thread is interrupted
+    // because a newer query replaced it.
+    int[] scanAvailable(int idBound) {
+        return scan(store::isAvailable, Integer.MAX_VALUE, idBound);
+    }
+
+    private int[] scan(IntPredicate filter, int limit, int idBound) {
+        return ParallelScan.ids(idBound, id -> store.contains(id) && filter.test(id), limit);
+    }
+
+    private static int[] merge(int[] ids, IdList list) {
+        int[] other = list.toArray();
+        int[] merged = new int[ids.length + other.length];
+        int i = 0, j = 0, k = 0;
+        while (i < ids.length && j < other.length) {
+            merged[k++] = ids[i] < other[j] ? ids[i++] : other[j++];
+        }
+        while (i < ids.length) {
+            merged[k++] = ids[i++];
+        }
+        while (j < other.length) {
+            merged[k++] = other[j++];
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,29 @@
+// Where the catalog keeps its books, addressed by id. The field getters let
+// hot paths such as searches and table painting read a single field without
+// materializing a whole Book.
+public interface BookStore {
+    void put(int id, Book book);
+
+    void remove(int id);
+
+    boolean contains(int id);
+
+    // Returns the book stored under id, or null if the slot is empty
+    Book get(int id);
+
+    String getTitle(int id);
+
+    String getAuthor(int id);
+
+    String getIsbn(int id);
+
+    String getCategory(int id);
+
+    String getDescription(int id);
+
+    int getYear(int id);
+
+    boolean isAvailable(int id);
+
+    void setAvailable(int id, boolean available);
+}
@@ -0,0 +1,246 @@
+import javax.swing.JTable;
+import javax.swing.SwingWorker;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.JTableHeader;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+
+// Table model that reads cells straight from the catalog on demand instead
+// of copying every book into a row vector. It can show every book in the
+// catalog or a subset described by an array of ids, such as a search result.
+// When showing the whole catalog it follows catalog events row by row.
+// Sorted by a column, it reads rows straight from the catalog's kept order
+// for that column, so catalog changes only need a repaint, or shows the
+// subset reordered by it. Header clicks build an order the catalog does not
+// keep yet on a worker thread.
+public class BookTableModel extends AbstractTableModel implements CatalogListener {
+    public enum Column {
+        TITLE("Title"),
+        AUTHOR("Author"),
+        ISBN("ISBN"),
+        CATEGORY("Category"),
+        YEAR("Year"),
+        AVAILABLE("Available"),
+        DESCRIPTION("Description");
+
+        private final String title;
+
+        Column(String title) {
+            this.title = title;
+        }
+    }
+
+    private final Column[] columns;
+    private Catalog catalog;
+    private int[] ids;
+    private int idCount;
+    private Column sortColumn; // null keeps catalog or result order
+    private boolean descending;
+    private int[] sortedIds; // rows while a subset is sorted
+    private int sortGeneration; // tells a finished background sort whether it still applies
+
+    // Shows every book in the catalog, in id order
+    public BookTableModel(Catalog catalog, Column... columns) {
+        this.columns = columns;
+        this.catalog = catalog;
+        catalog.addCatalogListener(this);
+    }
+
+    // Shows every book in the catalog, in id order
+    public void setCatalog(Catalog catalog) {
+        attach(catalog);
+        this.ids = null;
+        rebuild();
+    }
+
+    // Shows only the books whose ids are in the first count entries of ids
+    public void setIds(Catalog catalog, int[] ids, int count) {
+        attach(catalog);
+        this.ids = ids;
+        this.idCount = count;
+        rebuild();
+    }
+
+    // Sorts by the column, turns the order around when it already sorts by it,
+    // and goes back to the unsorted order when given null
+    public void sortBy(Column column) {
+        sortGeneration++;
+        descending = column != null && column == sortColumn && !descending;
+        sortColumn = column;
+        rebuild();
+    }
+
+    // Like sortBy, but sorts the catalog by the column on a worker thread if
+    // it does not keep that order yet; the rows change, and whenSorted runs,
+    // once it is ready. A later sort supersedes one still building.
+    public void sortLater(Column column, Runnable whenSorted) {
+        boolean nextDescending = column != null && column == sortColumn && !descending;
+        int generation = ++sortGeneration;
+        Catalog target = catalog;
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                if (column != null) {
+                    target.buildOrder(column);
+                }
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                if (generation == sortGeneration) {
+                    sortColumn = column;
+                    descending = nextDescending;
+                    rebuild();
+                    whenSorted.run();
+                }
+            }
+        }.execute();
+    }
+
+    public Column getSortColumn() {
+        return sortColumn;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    // Takes the new order and has the table repaint every row, timed as a table rebuild
+    private void rebuild() {
+        long start = System.nanoTime();
+        resort();
+        fireTableDataChanged();
+        catalog.getMetrics().record(CatalogMetrics.Operation.TABLE_REBUILD, start);
+    }
+
+    private void resort() {
+        if (sortColumn == null) {
+            sortedIds = null;
+            return;
+        }
+        if (ids == null) {
+            catalog.buildOrder(sortColumn); // Rows are read from it as they are shown
+            sortedIds = null;
+            return;
+        }
+        sortedIds = catalog.sort(ids, idCount, sortColumn);
+        if (descending) {
+            for (int i = 0, j = sortedIds.length - 1; i < j; i++, j--) {
+                int swap = sortedIds[i];
+                sortedIds[i] = sortedIds[j];
+                sortedIds[j] = swap;
+            }
+        }
+    }
+
+    // Clicking a column header of the table sorts by that column; clicking it again reverses the order
+    public void sortOnHeaderClick(JTable table) {
+        JTableHeader header = table.getTableHeader();
+        header.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int viewColumn = header.columnAtPoint(e.getPoint());
+                if (viewColumn < 0) {
+                    return;
+                }
+                sortLater(columns[table.convertColumnIndexToModel(viewColumn)], () -> {
+                    for (int i = 0; i < table.getColumnCount(); i++) {
+                        table.getColumnModel().getColumn(i).setHeaderValue(getColumnName(table.convertColumnIndexToModel(i)));
+                    }
+                    header.repaint();
+                });
+            }
+        });
+    }
+
+    @Override
+    public void catalogChanged(List<CatalogEvent> events) {
+        if (ids == null && sortColumn != null) {
+            // Rows move around in a sorted view; they are read from the kept order, so repaint them all
+            fireTableDataChanged();
+            return;
+        }
+        if (ids != null) {
+            // The owner of an id subset refreshes it; just repaint edited books
+            if (idCount > 0) {
+                fireTableRowsUpdated(0, idCount - 1);
+            }
+            return;
+        }
+        for (CatalogEvent event : events) {
+            int row = event.getRow();
+            switch (event.getType()) {
+                case ADDED: fireTableRowsInserted(row, row); break;
+                case UPDATED: fireTableRowsUpdated(row, row); break;
+                case REMOVED: fireTableRowsDeleted(row, row); break;
+                default:
+                    fireTableDataChanged();
+                    return;
+            }
+        }
+    }
+
+    private void attach(Catalog catalog) {
+        if (catalog != this.catalog) {
+            this.catalog.removeCatalogListener(this);
+            catalog.addCatalogListener(this);
+            this.catalog = catalog;
+        }
+    }
+
+    public int getIdAt(int row) {
+        if (sortedIds != null) {
+            return sortedIds[row];
+        }
+        if (ids == null) {
+            return sortColumn == null ? catalog.idAt(row) : catalog.sortedIdAt(sortColumn, row, descending);
+        }
+        return ids[row];
+    }
+
+    public Book getBookAt(int row) {
+        return catalog.get(getIdAt(row));
+    }
+
+    @Override
+    public int getRowCount() {
+        if (sortedIds != null) {
+            return sortedIds.length;
+        }
+        return ids == null ? catalog.size() : idCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        if (columns[column] == sortColumn) {
+            return columns[column].title + (descending ? " \u25BC" : " \u25B2");
+        }
+        return columns[column].title;
+    }
+
+    // Reads single fields so a compact store never has to build a Book per cell
+    @Override
+    public Object getValueAt(int row, int column) {
+        int id = getIdAt(row);
+        if (!catalog.contains(id)) {
+            return null; // Removed since the result was computed
+        }
+        switch (columns[column]) {
+            case TITLE: return catalog.getTitle(id);
+            case AUTHOR: return catalog.getAuthor(id);
+            case ISBN: return catalog.getIsbn(id);
+            case CATEGORY: return catalog.getCategory(id);
+            case YEAR: return catalog.getYear(id);
+            case AVAILABLE: return catalog.isAvailable(id) ? "Yes" : "No";
+            case DESCRIPTION: return catalog.getDescription(id);
+            default: return null;
+        }
+    }
+}
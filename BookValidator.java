@@ -0,0 +1,60 @@
+// Rules a book must meet before it is saved to the catalog, shared by the
+// book form and headless batch jobs.
+public class BookValidator {
+    public enum Problem {
+        MISSING_TITLE("Please enter a title!"),
+        MISSING_AUTHOR("Please enter an author!"),
+        MISSING_ISBN("Please enter an ISBN!"),
+        INVALID_ISBN("This ISBN's check digit does not match; please check the number!"),
+        MISSING_CATEGORY("Please select a category!"),
+        DUPLICATE_ISBN("A book with this ISBN already exists!");
+
+        private final String message;
+
+        Problem(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    // Returns the first problem with book, or null if it can be saved.
+    // editingId is the id of the book being replaced, or -1 for a new book.
+    public static Problem validate(Catalog catalog, Book book, int editingId) {
+        if (isBlank(book.getTitle())) {
+            return Problem.MISSING_TITLE;
+        }
+        if (isBlank(book.getAuthor())) {
+            return Problem.MISSING_AUTHOR;
+        }
+        if (isBlank(book.getIsbn())) {
+            return Problem.MISSING_ISBN;
+        }
+        // Other identifiers pass, and so does an edit that keeps the book's ISBN.
+        // Only a valid ISBN packs, so one that has the form but does not pack
+        // has a wrong check digit; neither check copies the text.
+        if (Isbn.pack(book.getIsbn()) < 0 && Isbn.hasIsbnForm(book.getIsbn())
+                && !keepsIsbn(catalog, book, editingId)) {
+            return Problem.INVALID_ISBN;
+        }
+        if (isBlank(book.getCategory())) {
+            return Problem.MISSING_CATEGORY;
+        }
+        int existingId = catalog.findByIsbn(book.getIsbn());
+        if (existingId >= 0 && existingId != editingId) {
+            return Problem.DUPLICATE_ISBN;
+        }
+        return null;
+    }
+
+    private static boolean keepsIsbn(Catalog catalog, Book book, int editingId) {
+        Book old = editingId >= 0 ? catalog.get(editingId) : null;
+        return old != null && Catalog.normalizeIsbn(old.getIsbn()).equals(Catalog.normalizeIsbn(book.getIsbn()));
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
@@ -0,0 +1,573 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// Append-only record of every loan, return, renewal and hold, partitioned by
+// month (UTC) into HistorySegment files. Like the catalog journal, callers
+// only queue events; one writer thread appends each batch to a small
+// uncompressed tail file with a single fsync, and every few thousand events
+// moves them into a deflated block of the current segment and empties the
+// tail. Events carry sequence numbers, so a crash between the two never
+// replays an event twice.
+// Reports read segment summaries where a month is covered whole and stream
+// the matching blocks otherwise, so the history never has to fit in the heap.
+// Members are saved beside the events, one record each in a members log, so
+// the member numbers in the history still name the same people after a restart.
+// A batch that fails to write is cut off the tail again and the history stops
+// recording, so no event is ever appended after one that is missing.
+public class BorrowingHistory implements Closeable {
+    private static final int BLOCK_EVENTS = 4096;
+
+    private final Path directory;
+    private final Clock clock;
+    private final FileChannel tail;
+    private final FileChannel memberLog;
+    private final Thread writer;
+    private final Deflater deflater = new Deflater();
+    private long tailBytes;
+    private long sequence; // of the last event moved out of the queue
+
+    // Segments, oldest first; the last one is active. Changed by the writer
+    // thread and read by queries, both under stateLock.
+    private final Object stateLock = new Object();
+    private final List<HistorySegment> segments = new ArrayList<>();
+    private HistorySegment active;
+    private List<HistoryEvent> pending = new ArrayList<>(); // in the tail, not yet in a block
+
+    private final Object queueLock = new Object();
+    private List<HistoryEvent> queuedEvents = new ArrayList<>();
+    private List<CompletableFuture<Void>> queuedFutures = new ArrayList<>();
+    private boolean closing;
+    private volatile IOException failure; // Set once, under queueLock
+    private volatile CompletableFuture<Void> lastQueued = CompletableFuture.completedFuture(null);
+
+    private final Object memberLock = new Object();
+    private final List<Member> members = new ArrayList<>();
+
+    public static BorrowingHistory open(Path directory) throws IOException {
+        return open(directory, Clock.systemUTC());
+    }
+
+    // Opens the history kept in directory; clock stamps every recorded event
+    public static BorrowingHistory open(Path directory, Clock clock) throws IOException {
+        Files.createDirectories(directory);
+        BorrowingHistory history = new BorrowingHistory(directory, clock);
+        history.writer.start();
+        return history;
+    }
+
+    private BorrowingHistory(Path directory, Clock clock) throws IOException {
+        this.directory = directory;
+        this.clock = clock;
+
+        TreeMap<YearMonth, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> found = Files.newDirectoryStream(directory, "history-*.seg")) {
+            for (Path file : found) {
+                String name = file.getFileName().toString();
+                try {
+                    files.put(YearMonth.parse(name.substring(8, name.length() - 4)), file);
+                } catch (DateTimeParseException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        for (Map.Entry<YearMonth, Path> file : files.entrySet()) {
+            boolean last = file.getKey().equals(files.lastKey());
+            HistorySegment segment = HistorySegment.open(file.getValue(), file.getKey(), last);
+            segments.add(segment);
+            sequence = Math.max(sequence, segment.getLastSequence());
+        }
+        if (!segments.isEmpty()) {
+            active = segments.get(segments.size() - 1);
+        }
+
+        tail = FileChannel.open(directory.resolve("history.tail"), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replayTail();
+
+        memberLog = FileChannel.open(directory.resolve("members.log"), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replayMembers();
+
+        writer = new Thread(this::writeLoop, "borrowing-history");
+        writer.setDaemon(true);
+    }
+
+    public CompletableFuture<Void> record(HistoryEvent.Type type, String isbn, int memberNumber) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (queueLock) {
+            if (failure != null) {
+                future.completeExceptionally(failure);
+                return future;
+            }
+            if (closing) {
+                future.completeExceptionally(new IOException("Borrowing history is closed"));
+                return future;
+            }
+            HistoryEvent event = new HistoryEvent(type, clock.millis(), Catalog.normalizeIsbn(isbn), memberNumber);
+            queuedEvents.add(event);
+            queuedFutures.add(future);
+            lastQueued = future;
+            queueLock.notifyAll();
+        }
+        return future;
+    }
+
+    // Completes once every event recorded so far is in the tail, or
+    // exceptionally with the history's error; batches complete in order
+    public CompletableFuture<Void> whenRecorded() {
+        return lastQueued;
+    }
+
+    // Saves the member before returning, so their number is never handed out again
+    public void addMember(Member member) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(member.getNumber());
+        data.writeUTF(member.getName());
+        ByteArrayOutputStream record = new ByteArrayOutputStream(40);
+        frame(record, bytes.toByteArray());
+        synchronized (memberLock) {
+            ByteBuffer buffer = ByteBuffer.wrap(record.toByteArray());
+            long start = memberLog.size();
+            try {
+                long position = start;
+                while (buffer.hasRemaining()) {
+                    position += memberLog.write(buffer, position);
+                }
+                memberLog.force(false);
+            } catch (IOException e) {
+                // A partial record would hide every member saved after it
+                memberLog.truncate(start);
+                throw e;
+            }
+            members.add(member);
+        }
+    }
+
+    // The error that stopped the history, or null while it is recording
+    public IOException getFailure() {
+        return failure;
+    }
+
+    // Every member saved so far, in the order they were added
+    public List<Member> getMembers() {
+        synchronized (memberLock) {
+            return new ArrayList<>(members);
+        }
+    }
+
+    // Events of the book with this ISBN in [from, to), oldest first.
+    // Segments whose Bloom filter rules the ISBN out are not read.
+    public List<HistoryEvent> getEvents(String isbn, Instant from, Instant to) throws IOException {
+        String key = Catalog.normalizeIsbn(isbn);
+        long start = from.toEpochMilli();
+        long end = to.toEpochMilli();
+        List<HistorySegment> matching = new ArrayList<>();
+        List<Long> limits = new ArrayList<>();
+        List<HistoryEvent> unwritten = Collections.emptyList();
+        synchronized (stateLock) {
+            for (HistorySegment segment : segments) {
+                if (segment.overlaps(start, end) && segment.mightContain(key)) {
+                    matching.add(segment);
+                    limits.add(segment.getLength());
+                    if (segment == active) {
+                        unwritten = new ArrayList<>(pending);
+                    }
+                }
+            }
+        }
+        List<HistoryEvent> events = new ArrayList<>();
+        for (int i = 0; i < matching.size(); i++) {
+            matching.get(i).scan(start, end, limits.get(i), key, events::add);
+        }
+        for (HistoryEvent event : unwritten) {
+            if (event.getIsbn().equals(key) && event.getTime() >= start && event.getTime() < end) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    // Passes every event recorded so far to consumer, oldest first
+    public void replay(Consumer<HistoryEvent> consumer) throws IOException {
+        List<HistorySegment> all;
+        List<Long> limits = new ArrayList<>();
+        List<HistoryEvent> unwritten;
+        synchronized (stateLock) {
+            all = new ArrayList<>(segments);
+            for (HistorySegment segment : all) {
+                limits.add(segment.getLength());
+            }
+            unwritten = new ArrayList<>(pending);
+        }
+        for (int i = 0; i < all.size(); i++) {
+            all.get(i).scan(Long.MIN_VALUE, Long.MAX_VALUE, limits.get(i), null, consumer);
+        }
+        for (HistoryEvent event : unwritten) {
+            consumer.accept(event);
+        }
+    }
+
+    // The limit most borrowed ISBNs in [from, to) with their number of loans,
+    // busiest first. Months inside the range are added up from their summaries;
+    // only the months at its edges are scanned.
+    public Map<String, Integer> getBusiestTitles(Instant from, Instant to, int limit) throws IOException {
+        long start = from.toEpochMilli();
+        long end = to.toEpochMilli();
+        Map<String, int[]> totals = new HashMap<>();
+        List<HistorySegment> whole = new ArrayList<>();
+        List<HistorySegment> partial = new ArrayList<>();
+        List<Long> limits = new ArrayList<>();
+        List<HistoryEvent> unwritten = Collections.emptyList();
+        synchronized (stateLock) {
+            for (HistorySegment segment : segments) {
+                if (!segment.overlaps(start, end)) {
+                    continue;
+                }
+                if (segment.coveredBy(start, end)) {
+                    if (segment.isSealed()) {
+                        whole.add(segment);
+                    } else {
+                        segment.addCountsTo(totals); // In memory, unwritten events included
+                    }
+                } else {
+                    partial.add(segment);
+                    limits.add(segment.getLength());
+                    if (segment == active) {
+                        unwritten = new ArrayList<>(pending);
+                    }
+                }
+            }
+        }
+        for (HistorySegment segment : whole) {
+            segment.addCountsTo(totals);
+        }
+        for (int i = 0; i < partial.size(); i++) {
+            partial.get(i).scan(start, end, limits.get(i), null, event -> countLoan(totals, event));
+        }
+        for (HistoryEvent event : unwritten) {
+            if (event.getTime() >= start && event.getTime() < end) {
+                countLoan(totals, event);
+            }
+        }
+
+        // Keeps only the limit busiest in a min-heap instead of sorting every title
+        PriorityQueue<Map.Entry<String, int[]>> busiest = new PriorityQueue<>(Math.max(1, limit),
+            (a, b) -> Integer.compare(a.getValue()[0], b.getValue()[0]));
+        for (Map.Entry<String, int[]> entry : totals.entrySet()) {
+            if (entry.getValue()[0] == 0 || limit <= 0) {
+                continue;
+            }
+            if (busiest.size() < limit) {
+                busiest.add(entry);
+            } else if (entry.getValue()[0] > busiest.peek().getValue()[0]) {
+                busiest.poll();
+                busiest.add(entry);
+            }
+        }
+        List<Map.Entry<String, int[]>> ranked = new ArrayList<>(busiest);
+        ranked.sort((a, b) -> Integer.compare(b.getValue()[0], a.getValue()[0]));
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (Map.Entry<String, int[]> entry : ranked) {
+            result.put(entry.getKey(), entry.getValue()[0]);
+        }
+        return result;
+    }
+
+    // Writes everything still queued, moves the tail into a block and stops the
+    // writer. After a failure the tail is left as it is for the next start to replay.
+    @Override
+    public void close() throws IOException {
+        synchronized (queueLock) {
+            closing = true;
+            queueLock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (stateLock) {
+            try {
+                if (failure == null) {
+                    flushBlock();
+                }
+            } finally {
+                if (active != null) {
+                    active.close();
+                }
+                tail.close();
+                memberLog.close();
+                deflater.end();
+            }
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            List<HistoryEvent> events;
+            List<CompletableFuture<Void>> futures;
+            synchronized (queueLock) {
+                while (queuedEvents.isEmpty() && !closing) {
+                    try {
+                        queueLock.wait();
+                    } catch (InterruptedException e) {
+                        closing = true;
+                    }
+                }
+                if (queuedEvents.isEmpty()) {
+                    return;
+                }
+                events = queuedEvents;
+                futures = queuedFutures;
+                queuedEvents = new ArrayList<>();
+                queuedFutures = new ArrayList<>();
+            }
+            try {
+                writeBatch(events);
+                complete(futures, null);
+            } catch (IOException e) {
+                fail(e, futures);
+                return;
+            }
+        }
+    }
+
+    // Stops recording: the batch and everything queued behind it fail
+    private void fail(IOException error, List<CompletableFuture<Void>> futures) {
+        List<CompletableFuture<Void>> queued;
+        synchronized (queueLock) {
+            failure = error;
+            queued = queuedFutures;
+            queuedEvents = new ArrayList<>();
+            queuedFutures = new ArrayList<>();
+        }
+        complete(futures, error);
+        complete(queued, error);
+    }
+
+    // Adds the events to the tail with one write and one fsync, starting a new
+    // segment whenever a new month begins and a new block whenever one fills up
+    private void writeBatch(List<HistoryEvent> events) throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream(events.size() * 48);
+        synchronized (stateLock) {
+            for (HistoryEvent event : events) {
+                YearMonth month = YearMonth.from(event.getInstant().atOffset(ZoneOffset.UTC));
+                if (active == null || month.isAfter(active.getMonth())) {
+                    flushBlock();
+                    records.reset();
+                    if (active != null) {
+                        active.seal();
+                    }
+                    active = HistorySegment.create(directory.resolve("history-" + month + ".seg"), month);
+                    segments.add(active);
+                }
+                sequence++;
+                pending.add(event);
+                active.count(event);
+                writeTailRecord(records, sequence, event);
+                if (pending.size() >= BLOCK_EVENTS) {
+                    flushBlock();
+                    records.reset();
+                }
+            }
+        }
+        if (records.size() > 0) {
+            long batchStart = tailBytes;
+            ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+            try {
+                while (buffer.hasRemaining()) {
+                    tailBytes += tail.write(buffer, tailBytes);
+                }
+                tail.force(false);
+            } catch (IOException e) {
+                // A replay must not find records after a torn one, nor events whose futures failed
+                tailBytes = batchStart;
+                try {
+                    tail.truncate(batchStart);
+                    tail.force(false);
+                } catch (IOException truncateError) {
+                    e.addSuppressed(truncateError);
+                }
+                throw e;
+            }
+        }
+    }
+
+    // Moves the pending events into a block of the active segment. The block is
+    // durable before the tail is emptied; if a crash comes in between, the
+    // block's last sequence number tells the replay to skip the old tail.
+    private void flushBlock() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        active.appendBlock(pending, sequence, deflater);
+        pending = new ArrayList<>();
+        tail.truncate(0);
+        tailBytes = 0;
+    }
+
+    private void replayTail() throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(
+            Channels.newInputStream(tail.position(0)), 64 * 1024));
+        CRC32 crc = new CRC32();
+        while (true) {
+            byte[] payload;
+            try {
+                int length = data.readInt();
+                int checksum = data.readInt();
+                if (length <= 0 || length > tail.size()) {
+                    break;
+                }
+                payload = new byte[length];
+                data.readFully(payload);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+            long eventSequence = record.readLong();
+            HistoryEvent.Type type = HistoryEvent.Type.values()[record.readByte()];
+            long time = record.readLong();
+            int memberNumber = record.readInt();
+            String isbn = record.readUTF();
+            if (eventSequence <= sequence) {
+                continue; // Already moved into a block
+            }
+            sequence = eventSequence;
+            HistoryEvent event = new HistoryEvent(type, time, isbn, memberNumber);
+            YearMonth month = YearMonth.from(event.getInstant().atOffset(ZoneOffset.UTC));
+            if (active == null) {
+                active = HistorySegment.create(directory.resolve("history-" + month + ".seg"), month);
+                segments.add(active);
+            }
+            pending.add(event);
+            active.count(event);
+        }
+
+        // Rewrite the tail so it holds exactly the pending events
+        ByteArrayOutputStream records = new ByteArrayOutputStream(pending.size() * 48 + 1);
+        long eventSequence = sequence - pending.size();
+        for (HistoryEvent event : pending) {
+            writeTailRecord(records, ++eventSequence, event);
+        }
+        tail.truncate(0);
+        ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+        tailBytes = 0;
+        while (buffer.hasRemaining()) {
+            tailBytes += tail.write(buffer, tailBytes);
+        }
+        tail.force(false);
+    }
+
+    // Reads the members log up to its first damaged record and cuts the log
+    // there, so a registration torn by a crash is dropped rather than kept
+    private void replayMembers() throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(
+            Channels.newInputStream(memberLog.position(0)), 64 * 1024));
+        CRC32 crc = new CRC32();
+        long valid = 0;
+        while (true) {
+            byte[] payload;
+            try {
+                int length = data.readInt();
+                int checksum = data.readInt();
+                if (length <= 0 || length > memberLog.size()) {
+                    break;
+                }
+                payload = new byte[length];
+                data.readFully(payload);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+            members.add(new Member(record.readInt(), record.readUTF()));
+            valid += 8 + payload.length;
+        }
+        if (valid < memberLog.size()) {
+            memberLog.truncate(valid);
+            memberLog.force(false);
+        }
+    }
+
+    private static void writeTailRecord(ByteArrayOutputStream records, long eventSequence, HistoryEvent event) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.writeLong(eventSequence);
+            data.writeByte(event.getType().ordinal());
+            data.writeLong(event.getTime());
+            data.writeInt(event.getMemberNumber());
+            data.writeUTF(event.getIsbn());
+            frame(records, bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Writing to memory does not fail
+        }
+    }
+
+    // Record layout, in the tail and the members log alike: payload length,
+    // CRC32 of the payload, then the payload
+    private static void frame(ByteArrayOutputStream records, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        DataOutputStream record = new DataOutputStream(records);
+        record.writeInt(payload.length);
+        record.writeInt((int) crc.getValue());
+        record.write(payload);
+    }
+
+    private static void countLoan(Map<String, int[]> totals, HistoryEvent event) {
+        if (event.getType() == HistoryEvent.Type.LOAN) {
+            totals.computeIfAbsent(event.getIsbn(), isbn -> new int[2])[0]++;
+        }
+    }
+
+    private static void complete(List<CompletableFuture<Void>> futures, Throwable error) {
+        for (CompletableFuture<Void> future : futures) {
+            if (error == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(error);
+            }
+        }
+    }
+}
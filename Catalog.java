@@ -0,0 +1,754 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+
+// Owns every book in the library. Each book gets a stable id when it is
+// added; ids are never reused, so removing a book leaves an empty slot
+// instead of shifting the books behind it. A hash index keyed by normalized
+// ISBN makes duplicate checks and ISBN lookups O(1). Valid ISBNs, nearly
+// every book, are keyed by their packed ISBN-13 number in a LongIntMap, so
+// looking one up allocates nothing and an ISBN-10 finds the same book as its
+// ISBN-13; other identifiers keep a string-keyed map.
+// The catalog is safe to share between threads. Mutations take a write lock;
+// searches share a read lock, so several can run in parallel; single-field
+// reads, such as painting a table cell, read optimistically without locking
+// and only fall back to the read lock when a write got in the way.
+// Every mutation is published to listeners through the catalog's event bus.
+// The books themselves live in a BookStore, either as plain Book objects or in
+// the memory-optimized compact layout. When a journal is attached, every
+// mutation is also queued for it under the catalog lock, in commit order;
+// once the journal has failed, mutations are refused rather than kept only
+// in memory.
+// Sorted views of the catalog build a ColumnOrder per column the first time
+// they are asked for, and every mutation keeps the built ones in order.
+// Search results go into a QueryCache. Every mutation bumps a version
+// counter, so no result from before it is served again; checkouts and
+// returns bump a separate one that only queries about availability depend on.
+// Every public mutation and search is timed into the catalog's CatalogMetrics.
+public class Catalog {
+    private final StampedLock lock = new StampedLock();
+    private final BookStore store;
+    private final MappedBookStore snapshot; // null unless opened from one
+    private volatile int idBound;
+    private volatile int size;
+    private final LongIntMap packedIsbns = new LongIntMap();
+    private final Map<String, Integer> isbnIndex = new HashMap<>(); // identifiers that are not ISBN-13s
+    private final RowIndex rows = new RowIndex();
+    private final BookSearchIndex searchIndex;
+    private final CategoryCounts categoryCounts = new CategoryCounts();
+    private final CatalogEventBus events = new CatalogEventBus();
+    // Built under the read lock, so concurrent readers synchronize on the map
+    private final Map<BookTableModel.Column, ColumnOrder> orders = new EnumMap<>(BookTableModel.Column.class);
+    private CatalogJournal journal;
+    // The journal write of the latest mutation; the journal completes writes in order
+    private volatile CompletableFuture<Void> lastSave = CompletableFuture.completedFuture(null);
+    private final QueryCache queryCache = new QueryCache(QUERY_CACHE_ENTRIES, QUERY_CACHE_IDS);
+    private final CatalogMetrics metrics = new CatalogMetrics(queryCache);
+    // Both only change under the write lock, so the read lock sees them steady
+    private long version; // books added, removed or edited
+    private long availabilityVersion; // books checked out or returned
+
+    // A few hundred repeated searches fit; 4M ids take 16 MB.
+    // -Dlibrary.queryCache=0 turns the cache off.
+    private static final int QUERY_CACHE_ENTRIES = Integer.getInteger("library.queryCache", 512);
+    private static final long QUERY_CACHE_IDS = 1 << 22;
+
+    // Reads for the optimistic path, bound once so reading a cell does not allocate
+    private final IntFunction<Book> books = this::book;
+    private final IntUnaryOperator liveFlags = id -> isLive(id) ? 1 : 0;
+    private final IntUnaryOperator rowsOfIds = id -> isLive(id) ? rows.rank(id) : -1;
+    private final IntUnaryOperator idsAtRows = row -> rows.select(row);
+    private final IntFunction<String> titles;
+    private final IntFunction<String> authors;
+    private final IntFunction<String> isbns;
+    private final IntFunction<String> categories;
+    private final IntFunction<String> descriptions;
+    private final IntUnaryOperator years;
+    private final IntUnaryOperator availableFlags;
+
+    public Catalog() {
+        this(new ObjectBookStore());
+    }
+
+    public Catalog(BookStore store) {
+        this(store, null);
+    }
+
+    // Opens a catalog on the books of a mapped snapshot. The snapshot's sorted
+    // ISBN column stands in for the hash index, which then only holds books
+    // added or re-keyed since. Searches scan until indexInBackground has caught up.
+    public Catalog(MappedBookStore snapshot) {
+        this(snapshot, snapshot);
+        int count = snapshot.getCount();
+        for (int id = 0; id < count; id++) {
+            rows.append();
+            categoryCounts.increment(snapshot.getCategory(id));
+        }
+        idBound = count;
+        size = count;
+        searchIndex.defer();
+    }
+
+    private Catalog(BookStore store, MappedBookStore snapshot) {
+        this.store = store;
+        this.snapshot = snapshot;
+        this.searchIndex = new BookSearchIndex(store);
+        this.titles = store::getTitle;
+        this.authors = store::getAuthor;
+        this.isbns = store::getIsbn;
+        this.categories = store::getCategory;
+        this.descriptions = store::getDescription;
+        this.years = store::getYear;
+        this.availableFlags = id -> store.isAvailable(id) ? 1 : 0;
+    }
+
+    // Builds the search indexes of a catalog opened from a snapshot
+    public void indexInBackground() {
+        Thread indexer = new Thread(this::buildDeferredIndexes, "catalog-indexer");
+        indexer.setDaemon(true);
+        indexer.setPriority(Thread.MIN_PRIORITY);
+        indexer.start();
+    }
+
+    // Small chunks keep the lock free for the EDT between them; the pause lets
+    // a waiting thread take the lock before the indexer grabs it again
+    private void buildDeferredIndexes() {
+        boolean more = true;
+        while (more) {
+            long stamp = lock.writeLock();
+            try {
+                more = searchIndex.indexDeferred(4096, idBound);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // Strips hyphens and spaces so "978-0743273565" and "9780743273565" match
+    public static String normalizeIsbn(String isbn) {
+        StringBuilder normalized = new StringBuilder(isbn.length());
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c != '-' && !Character.isWhitespace(c)) {
+                normalized.append(Character.toUpperCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+
+    // Returns the new book's id, or -1 if a book with the same ISBN exists
+    public int add(Book book) {
+        long start = System.nanoTime();
+        long stamp = lock.writeLock();
+        try {
+            checkJournal();
+            int id = insert(book);
+            if (id >= 0) {
+                synchronized (orders) {
+                    for (ColumnOrder order : orders.values()) {
+                        order.add(id, book);
+                    }
+                }
+                if (journal != null) {
+                    lastSave = journal.logAdd(book);
+                }
+                events.publish(new CatalogEvent(CatalogEvent.Type.ADDED, id, size - 1, null, book));
+            }
+            return id;
+        } finally {
+            lock.unlockWrite(stamp);
+            metrics.record(CatalogMetrics.Operation.ADD, start);
+        }
+    }
+
+    // Adds a batch of books, skipping duplicate ISBNs, and publishes a single
+    // BULK event instead of one per book. Returns how many were added.
+    public int addAll(List<Book> books) {
+        long start = System.nanoTime();
+        long stamp = lock.writeLock();
+        try {
+            checkJournal();
+            int first = idBound;
+            int added = 0;
+            for (Book book : books) {
+                if (insert(book) >= 0) {
+                    if (journal != null) {
+                        lastSave = journal.logAdd(book);
+                    }
+                    added++;
+                }
+            }
+            if (added > 0) {
+                synchronized (orders) {
+                    for (ColumnOrder order : orders.values()) {
+                        order.addRange(first, idBound);
+                    }
+                }
+                events.publish(CatalogEvent.bulk());
+            }
+            return added;
+        } finally {
+            lock.unlockWrite(stamp);
+            metrics.record(CatalogMetrics.Operation.ADD_ALL, start);
+        }
+    }
+
+    private int insert(Book book) {
+        String key = normalizeIsbn(book.getIsbn());
+        if (lookupIsbn(key) >= 0) {
+            return -1;
+        }
+        int id = idBound;
+        version++;
+        store.put(id, book);
+        indexIsbn(key, id);
+        rows.append();
+        searchIndex.add(id, book);
+        categoryCounts.increment(book.getCategory());
+        idBound = id + 1;
+        size++;
+        return id;
+    }
+
+    public Book remove(int id) {
+        long start = System.nanoTime();
+        long stamp = lock.writeLock();
+        try {
+            checkJournal();
+            Book book = book(id);
+            if (book == null) {
+                return null;
+            }
+            int row = rows.rank(id);
+            version++;
+            store.remove(id);
+            unindexIsbn(normalizeIsbn(book.getIsbn()));
+            rows.remove(id);
+            searchIndex.remove(id, book);
+            categoryCounts.decrement(book.getCategory());
+            synchronized (orders) {
+                for (ColumnOrder order : orders.values()) {
+                    order.remove(id, book);
+                }
+            }
+            size--;
+            if (journal != null) {
+                lastSave = journal.logRemove(book.getIsbn());
+            }
+            events.publish(new CatalogEvent(CatalogEvent.Type.REMOVED, id, row, book, null));
+            return book;
+        } finally {
+            lock.unlockWrite(stamp);
+            metrics.record(CatalogMetrics.Operation.REMOVE, start);
+        }
+    }
+
+    // Replaces the book stored under id; fails if the new ISBN belongs to another book
+    public boolean update(int id, Book book) {
+        long start = System.nanoTime();
+        long stamp = lock.writeLock();
+        try {
+            checkJournal();
+            Book old = book(id);
+            if (old == null) {
+                return false;
+            }
+            String oldKey = normalizeIsbn(old.getIsbn());
+            String newKey = normalizeIsbn(book.getIsbn());
+            if (!oldKey.equals(newKey)) {
+                int existing = lookupIsbn(newKey); // This book itself when only the ISBN's form changed
+                if (existing >= 0 && existing != id) {
+                    return false;
+                }
+                unindexIsbn(oldKey);
+                indexIsbn(newKey, id);
+            }
+            version++;
+            store.put(id, book);
+            searchIndex.update(id, old, book);
+            updateOrders(id, old, book);
+            if (!old.getCategory().equals(book.getCategory())) {
+                categoryCounts.decrement(old.getCategory());
+                categoryCounts.increment(book.getCategory());
+            }
+            if (journal != null) {
+                lastSave = journal.logUpdate(old.getIsbn(), book);
+            }
+            events.publish(new CatalogEvent(CatalogEvent.Type.UPDATED, id, rows.rank(id), old, book));
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+            metrics.record(CatalogMetrics.Operation.UPDATE, start);
+        }
+    }
+
+    // Flips only the Available flag. Returns false if the book is gone; setting
+    // the value it already has changes nothing. The store flips the flag in
+    // place, so a compact record keeps its other fields.
+    public boolean setAvailable(int id, boolean available) {
+        long start = System.nanoTime();
+        long stamp = lock.writeLock();
+        try {
+            checkJournal();
+            return flipAvailable(id, available);
+        } finally {
+            lock.unlockWrite(stamp);
+            metrics.record(CatalogMetrics.Operation.CHECKOUT, start);
+        }
+    }
+
+    // Sets the flags of the first count ids under one hold of the write lock,
+    // for circulation, which publishes them in batches; gone books are skipped
+    public void setAvailable(int[] ids, boolean[] available, int count) {
+        if (count == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        long stamp = lock.writeLock();
+        try {
+            checkJournal();
+            for (int i = 0; i < count; i++) {
+                flipAvailable(ids[i], available[i]);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+            metrics.record(CatalogMetrics.Operation.CHECKOUT, start);
+        }
+    }
+
+    private boolean flipAvailable(int id, boolean available) {
+        if (!isLive(id)) {
+            return false;
+        }
+        if (store.isAvailable(id) == available) {
+            return true;
+        }
+        Book old = store.get(id);
+        availabilityVersion++;
+        store.setAvailable(id, available);
+        Book book = store.get(id);
+        updateOrders(id, old, book);
+        if (journal != null) {
+            lastSave = journal.logUpdate(old.getIsbn(), book);
+        }
+        events.publish(new CatalogEvent(CatalogEvent.Type.UPDATED, id, rows.rank(id), old, book));
+        return true;
+    }
+
+    private void updateOrders(int id, Book old, Book book) {
+        synchronized (orders) {
+            for (ColumnOrder order : orders.values()) {
+                order.update(id, old, book);
+            }
+        }
+    }
+
+    public Book get(int id) {
+        return read(books, id);
+    }
+
+    public boolean contains(int id) {
+        return readInt(liveFlags, id) != 0;
+    }
+
+    // Whether the books are mapped from a snapshot file rather than kept in the
+    // store the catalog was created with
+    public boolean isMapped() {
+        return snapshot != null;
+    }
+
+    // Single-field reads for hot paths; id must belong to a live book
+    public String getTitle(int id) { return read(titles, id); }
+
+    public String getAuthor(int id) { return read(authors, id); }
+
+    public String getIsbn(int id) { return read(isbns, id); }
+
+    public String getCategory(int id) { return read(categories, id); }
+
+    public String getDescription(int id) { return read(descriptions, id); }
+
+    public int getYear(int id) { return readInt(years, id); }
+
+    public boolean isAvailable(int id) { return readInt(availableFlags, id) != 0; }
+
+    // Returns the id of the book with this ISBN, or -1. A valid ISBN-13 is
+    // read straight into its packed form, without a normalized copy.
+    public int findByIsbn(String isbn) {
+        long packed = Isbn.pack(isbn);
+        String key = packed >= 0 ? null : normalizeIsbn(isbn);
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                int id = lookupIsbn(packed, key);
+                if (lock.validate(stamp)) {
+                    return id;
+                }
+            } catch (RuntimeException e) {
+                // The index changed under the read; retried below
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return lookupIsbn(packed, key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean containsIsbn(String isbn) {
+        return findByIsbn(isbn) >= 0;
+    }
+
+    // Ids of the books whose field contains the query, ignoring case, in id order
+    public int[] search(BookSearchIndex.Field field, String query) {
+        return search(BookQuery.contains(field, query));
+    }
+
+    // Ids of the books matching a query over several fields, in id order
+    public int[] search(BookQuery query) {
+        return search(query, Integer.MAX_VALUE);
+    }
+
+    // The first limit of them; a query no index can answer stops scanning once it has them
+    public int[] search(BookQuery query, int limit) {
+        long start = System.nanoTime();
+        long stamp = lock.readLock();
+        try {
+            return cached("query " + limit + " " + query.key(), query.readsAvailability(),
+                () -> searchIndex.search(query, limit, idBound));
+        } finally {
+            lock.unlockRead(stamp);
+            metrics.record(CatalogMetrics.Operation.SEARCH, start);
+        }
+    }
+
+    // Ids of the books whose title or author is within a few typos of the
+    // query and that match the filter, closest first
+    public int[] searchFuzzy(BookSearchIndex.Field field, String query, BookQuery filter) {
+        long start = System.nanoTime();
+        long stamp = lock.readLock();
+        try {
+            return cached("fuzzy " + field + " " + words(query) + filter.key(), filter.readsAvailability(),
+                () -> searchIndex.searchFuzzy(field, query, filter, idBound));
+        } finally {
+            lock.unlockRead(stamp);
+            metrics.record(CatalogMetrics.Operation.FUZZY_SEARCH, start);
+        }
+    }
+
+    // Ids of the books whose descriptions best match the query and that match
+    // the filter, at most limit of them, most relevant first
+    public int[] searchDescriptions(String query, int limit, BookQuery filter) {
+        long start = System.nanoTime();
+        long stamp = lock.readLock();
+        try {
+            return cached("topic " + limit + " " + words(query) + filter.key(), filter.readsAvailability(),
+                () -> searchIndex.searchDescriptions(query, limit, filter, idBound));
+        } finally {
+            lock.unlockRead(stamp);
+            metrics.record(CatalogMetrics.Operation.DESCRIPTION_SEARCH, start);
+        }
+    }
+
+    // Hits and misses of the search result cache
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    // Latencies of the catalog's operations, which panels add their own to
+    public CatalogMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Runs a search under the read lock unless the cache holds its result
+    // from the current version. A search cut short by an interrupt is not kept.
+    private int[] cached(String key, boolean readsAvailability, Supplier<int[]> search) {
+        long current = readsAvailability ? version + availabilityVersion : version;
+        int[] ids = queryCache.get(key, current);
+        if (ids == null) {
+            ids = search.get();
+            if (!Thread.currentThread().isInterrupted()) {
+                queryCache.put(key, current, ids);
+            }
+        }
+        return ids;
+    }
+
+    // Fuzzy and description searches only see the words of a query
+    private static String words(String query) {
+        String words = String.join(" ", FuzzyIndex.words(NGramIndex.fold(query)));
+        return words.length() + ":" + words;
+    }
+
+    // Starts keeping the books sorted by the column. The first call for a
+    // column sorts the whole catalog, so the table calls it off the EDT;
+    // later calls return at once.
+    public void buildOrder(BookTableModel.Column column) {
+        long start = System.nanoTime();
+        long stamp = lock.readLock();
+        try {
+            synchronized (orders) {
+                order(column);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+            metrics.record(CatalogMetrics.Operation.SORT, start);
+        }
+    }
+
+    // Id of the book at this position in the kept order of the column,
+    // counted from the end when descending; -1 past the last book or while
+    // the order is not built. Read live, like idAt, so nothing is copied.
+    public int sortedIdAt(BookTableModel.Column column, int position, boolean descending) {
+        return readInt(index -> {
+            ColumnOrder order;
+            synchronized (orders) { // Readers may be building an order
+                order = orders.get(column);
+            }
+            return order == null ? -1 : order.idAt(descending ? order.size() - 1 - index : index);
+        }, position);
+    }
+
+    // The first count ids in the order of the column, as a new array; ids of
+    // books removed since go last
+    public int[] sort(int[] ids, int count, BookTableModel.Column column) {
+        long start = System.nanoTime();
+        long stamp = lock.readLock();
+        try {
+            synchronized (orders) {
+                return order(column).sort(ids, count);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+            metrics.record(CatalogMetrics.Operation.SORT, start);
+        }
+    }
+
+    private ColumnOrder order(BookTableModel.Column column) {
+        ColumnOrder order = orders.get(column);
+        if (order == null) {
+            order = new ColumnOrder(column, store, idBound);
+            orders.put(column, order);
+        }
+        return order;
+    }
+
+    // Called by CatalogJournal.open once the journal has been replayed
+    void setJournal(CatalogJournal journal) {
+        long stamp = lock.writeLock();
+        try {
+            this.journal = journal;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // The error that stopped the journal, or null while changes are being saved
+    public IOException getJournalFailure() {
+        CatalogJournal attached = journal;
+        return attached == null ? null : attached.getFailure();
+    }
+
+    // Completes once every mutation made so far is in the journal, or
+    // exceptionally with the journal's error; at once without a journal
+    public CompletableFuture<Void> whenSaved() {
+        return lastSave;
+    }
+
+    private void checkJournal() {
+        IOException failure = getJournalFailure();
+        if (failure != null) {
+            throw new UncheckedIOException("Changes can no longer be saved: " + failure.getMessage(), failure);
+        }
+    }
+
+    public void addCatalogListener(CatalogListener listener) {
+        events.subscribe(listener);
+    }
+
+    public void removeCatalogListener(CatalogListener listener) {
+        events.unsubscribe(listener);
+    }
+
+    public CategoryCounts getCategoryCounts() {
+        return categoryCounts;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Every id ever handed out is below this bound; removed ids hold null
+    public int getIdBound() {
+        return idBound;
+    }
+
+    // Live books in id order, i.e. the order they are shown in the book table
+    public int idAt(int row) {
+        return readInt(idsAtRows, row);
+    }
+
+    public int rowOf(int id) {
+        return readInt(rowsOfIds, id);
+    }
+
+    public Book[] toArray() {
+        return toArray(null);
+    }
+
+    // Copies the books, then runs whileLocked before any mutation can start,
+    // so the caller can pair the copy with state that mutations also update
+    Book[] toArray(Runnable whileLocked) {
+        long stamp = lock.readLock();
+        try {
+            Book[] books = new Book[size];
+            int count = 0;
+            for (int id = 0; id < idBound; id++) {
+                if (store.contains(id)) {
+                    books[count++] = store.get(id);
+                }
+            }
+            if (whileLocked != null) {
+                whileLocked.run();
+            }
+            return books;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Writes the live books with ids from first up to end, reading their fields
+    // straight from the store under the read lock, so no Book objects are built
+    // and no edit lands halfway through a book. Returns how many were written.
+    public int writeBooks(int first, int end, CsvBookWriter writer) throws IOException {
+        long stamp = lock.readLock();
+        try {
+            int written = 0;
+            for (int id = first; id < end; id++) {
+                if (isLive(id)) {
+                    writer.write(store, id);
+                    written++;
+                }
+            }
+            return written;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Reads one value without locking and keeps it if no write happened
+    // meanwhile. A read racing a write may see a half-updated structure and
+    // throw, so failures are retried under the read lock too.
+    private <T> T read(IntFunction<T> reader, int id) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T value = reader.apply(id);
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            } catch (RuntimeException e) {
+                // Retried below
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.apply(id);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int readInt(IntUnaryOperator reader, int id) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                int value = reader.applyAsInt(id);
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            } catch (RuntimeException e) {
+                // Retried below
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.applyAsInt(id);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // The helpers below run under the lock or inside a validated optimistic read
+
+    private Book book(int id) {
+        return isLive(id) ? store.get(id) : null;
+    }
+
+    private boolean isLive(int id) {
+        return id >= 0 && id < idBound && store.contains(id);
+    }
+
+    private int lookupIsbn(String key) {
+        return lookupIsbn(Isbn.pack(key), key);
+    }
+
+    // key is the normalized ISBN, which may be null when packed is not -1.
+    // The snapshot is sorted by the ISBNs as written, so a valid ISBN is
+    // looked for in both its forms there.
+    private int lookupIsbn(long packed, String key) {
+        int id = packed >= 0 ? packedIsbns.get(packed) : isbnIndex.getOrDefault(key, -1);
+        if (id >= 0 || snapshot == null) {
+            return id;
+        }
+        if (packed < 0) {
+            return snapshotIsbn(key, packed);
+        }
+        id = snapshotIsbn(Isbn.unpack(packed), packed);
+        String isbn10 = Isbn.toIsbn10(packed);
+        return id >= 0 || isbn10 == null ? id : snapshotIsbn(isbn10, packed);
+    }
+
+    // A snapshot hit only counts if that book still exists with that ISBN
+    private int snapshotIsbn(String normalized, long packed) {
+        int candidate = snapshot.findIsbn(normalized);
+        if (candidate < 0 || !store.contains(candidate)) {
+            return -1;
+        }
+        String isbn = store.getIsbn(candidate);
+        boolean same = packed >= 0 ? Isbn.pack(isbn) == packed : normalizeIsbn(isbn).equals(normalized);
+        return same ? candidate : -1;
+    }
+
+    private void indexIsbn(String key, int id) {
+        long packed = Isbn.pack(key);
+        if (packed >= 0) {
+            packedIsbns.put(packed, id);
+        } else {
+            isbnIndex.put(key, id);
+        }
+    }
+
+    private void unindexIsbn(String key) {
+        long packed = Isbn.pack(key);
+        if (packed >= 0) {
+            packedIsbns.remove(packed);
+        } else {
+            isbnIndex.remove(key);
+        }
+    }
+}
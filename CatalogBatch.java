@@ -0,0 +1,287 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+// Command-line batch mode for nightly jobs and throughput tests. It drives the
+// catalog directly and never creates a window or Swing model. Commands run in
+// the order given against one catalog; results go to standard output and
+// timings to standard error.
+public class CatalogBatch {
+    private static final int BATCH_SIZE = 10000;
+
+    private final Catalog catalog;
+    private final BorrowingHistory history; // null without --data
+    private final PrintWriter out = new PrintWriter(new BufferedWriter(
+        new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 64 * 1024));
+
+    public CatalogBatch(Catalog catalog) {
+        this(catalog, null);
+    }
+
+    public CatalogBatch(Catalog catalog, BorrowingHistory history) {
+        this.catalog = catalog;
+        this.history = history;
+    }
+
+    public static void main(String[] args) {
+        int exitCode;
+        try {
+            exitCode = run(args);
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            exitCode = 1;
+        }
+        System.exit(exitCode);
+    }
+
+    private static int run(String[] args) throws IOException {
+        Path dataDirectory = null;
+        boolean compact = false;
+        int first = 0;
+        while (first < args.length && args[first].startsWith("--")) {
+            if (args[first].equals("--compact")) {
+                compact = true;
+                first++;
+            } else if (args[first].equals("--data") && first + 1 < args.length) {
+                dataDirectory = Paths.get(args[first + 1]);
+                first += 2;
+            } else {
+                printUsage();
+                return 2;
+            }
+        }
+        if (first == args.length) {
+            printUsage();
+            return 2;
+        }
+
+        BookStore store = compact ? new CompactBookStore() : new ObjectBookStore();
+        CatalogJournal journal = dataDirectory == null ? null : CatalogJournal.open(dataDirectory, store);
+        BorrowingHistory history = null;
+        try {
+            if (dataDirectory != null) {
+                history = BorrowingHistory.open(dataDirectory.resolve("history"));
+            }
+            CatalogBatch batch = new CatalogBatch(journal == null ? new Catalog(store) : journal.getCatalog(), history);
+            batch.execute(args, first);
+        } finally {
+            if (history != null) {
+                history.close();
+            }
+            if (journal != null) {
+                journal.close();
+            }
+        }
+        if (journal != null && journal.getFailure() != null) {
+            System.err.println("Error: catalog changes were not saved: " + journal.getFailure().getMessage());
+            return 1;
+        }
+        return 0;
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: java LibraryManagementSystem [--data DIR] [--compact] COMMAND...");
+        System.err.println("Commands, run in order:");
+        System.err.println("  import FILE.csv           add the books in a CSV file");
+        System.err.println("  search FIELD QUERY        list books whose title, author, category or isbn contains QUERY");
+        System.err.println("  topic QUERY COUNT         list the COUNT books whose descriptions best match QUERY");
+        System.err.println("  count                     print the number of books per category");
+        System.err.println("  export FILE.csv           write the catalog to a CSV file");
+        System.err.println("  loans ISBN FROM TO        list the loans and returns of a book between two dates");
+        System.err.println("  busiest FROM TO COUNT     list the COUNT most borrowed books between two dates");
+        System.err.println("--data keeps the catalog in DIR between runs; otherwise it starts empty.");
+        System.err.println("Dates are yyyy-mm-dd in UTC; FROM is included and TO is not. The history needs --data.");
+    }
+
+    public void execute(String[] args, int first) throws IOException {
+        int i = first;
+        try {
+            while (i < args.length) {
+                String command = args[i++];
+                switch (command) {
+                    case "import":
+                        importCsv(Paths.get(argument(args, i++, command)));
+                        break;
+                    case "search":
+                        BookSearchIndex.Field field = parseField(argument(args, i++, command));
+                        search(field, argument(args, i++, command));
+                        break;
+                    case "topic": {
+                        String query = argument(args, i++, command);
+                        topic(query, parseCount(argument(args, i++, command)));
+                        break;
+                    }
+                    case "count":
+                        count();
+                        break;
+                    case "export":
+                        exportCsv(Paths.get(argument(args, i++, command)));
+                        break;
+                    case "loans": {
+                        String isbn = argument(args, i++, command);
+                        Instant from = parseDate(argument(args, i++, command));
+                        loans(isbn, from, parseDate(argument(args, i++, command)));
+                        break;
+                    }
+                    case "busiest": {
+                        Instant from = parseDate(argument(args, i++, command));
+                        Instant to = parseDate(argument(args, i++, command));
+                        busiest(from, to, parseCount(argument(args, i++, command)));
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("Unknown command: " + command);
+                }
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    public void importCsv(Path path) throws IOException {
+        long start = System.nanoTime();
+        int before = catalog.size();
+        int read;
+        int skipped;
+        try (CsvBookReader reader = new CsvBookReader(path)) {
+            read = reader.readInBatches(BATCH_SIZE, catalog::addAll, progress -> true);
+            skipped = reader.getSkippedRows();
+        }
+        try {
+            catalog.whenSaved().join();
+        } catch (CompletionException e) {
+            throw new IOException("Imported books were not saved: " + e.getCause().getMessage(), e.getCause());
+        }
+        int added = catalog.size() - before;
+        report("import", start, String.format("%d books added, %d duplicate ISBNs, %d malformed rows",
+            added, read - added, skipped));
+    }
+
+    public void search(BookSearchIndex.Field field, String query) {
+        long start = System.nanoTime();
+        int[] ids = catalog.search(field, query);
+        printBooks(ids);
+        report("search", start, ids.length + " results");
+    }
+
+    public void topic(String query, int count) {
+        long start = System.nanoTime();
+        int[] ids = catalog.searchDescriptions(query, count, BookQuery.and());
+        printBooks(ids);
+        report("topic", start, ids.length + " results");
+    }
+
+    private void printBooks(int[] ids) {
+        for (int id : ids) {
+            out.print(catalog.getTitle(id));
+            out.print('\t');
+            out.print(catalog.getAuthor(id));
+            out.print('\t');
+            out.print(catalog.getIsbn(id));
+            out.print('\t');
+            out.print(catalog.getCategory(id));
+            out.print('\t');
+            out.println(catalog.getYear(id));
+        }
+    }
+
+    public void count() {
+        long start = System.nanoTime();
+        Map<String, Integer> counts = catalog.getCategoryCounts().toMap();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            out.println(entry.getKey() + "\t" + entry.getValue());
+        }
+        out.println("Total\t" + catalog.size());
+        report("count", start, counts.size() + " categories");
+    }
+
+    public void exportCsv(Path path) throws IOException {
+        long start = System.nanoTime();
+        int written = CsvBookWriter.export(catalog, path, progress -> true);
+        report("export", start, written + " books written");
+    }
+
+    public void loans(String isbn, Instant from, Instant to) throws IOException {
+        long start = System.nanoTime();
+        List<HistoryEvent> events = requireHistory().getEvents(isbn, from, to);
+        int loans = 0;
+        int returns = 0;
+        for (HistoryEvent event : events) {
+            if (event.getType() == HistoryEvent.Type.LOAN) {
+                loans++;
+            } else if (event.getType() == HistoryEvent.Type.RETURN) {
+                returns++;
+            } else {
+                continue; // Renewals and holds are not loans
+            }
+            out.println(event.getInstant() + "\t" + event.getType() + "\t" + event.getMemberNumber());
+        }
+        report("loans", start, loans + " loans, " + returns + " returns");
+    }
+
+    public void busiest(Instant from, Instant to, int count) throws IOException {
+        long start = System.nanoTime();
+        Map<String, Integer> busiest = requireHistory().getBusiestTitles(from, to, count);
+        for (Map.Entry<String, Integer> entry : busiest.entrySet()) {
+            int id = catalog.findByIsbn(entry.getKey());
+            out.println(entry.getKey() + "\t" + entry.getValue() + "\t" + (id >= 0 ? catalog.getTitle(id) : ""));
+        }
+        report("busiest", start, busiest.size() + " books");
+    }
+
+    private BorrowingHistory requireHistory() {
+        if (history == null) {
+            throw new IllegalArgumentException("The borrowing history needs --data");
+        }
+        return history;
+    }
+
+    private static Instant parseDate(String date) {
+        try {
+            return LocalDate.parse(date).atStartOfDay(ZoneOffset.UTC).toInstant();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Not a yyyy-mm-dd date: " + date);
+        }
+    }
+
+    private static int parseCount(String count) {
+        try {
+            return Integer.parseInt(count);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + count);
+        }
+    }
+
+    private static String argument(String[] args, int index, String command) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing argument for " + command);
+        }
+        return args[index];
+    }
+
+    private static BookSearchIndex.Field parseField(String name) {
+        try {
+            return BookSearchIndex.Field.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown search field: " + name);
+        }
+    }
+
+    private void report(String command, long start, String summary) {
+        out.flush();
+        System.err.printf("%s: %s (%d ms)%n", command, summary, (System.nanoTime() - start) / 1000000);
+    }
+}
@@ -0,0 +1,36 @@
+// One change to the catalog. Row is the book's table row at the moment of the
+// change, so replaying a batch of events in order keeps a view consistent.
+// BULK means too much changed to describe book by book and views should reload.
+public class CatalogEvent {
+    public enum Type { ADDED, UPDATED, REMOVED, BULK }
+
+    private final Type type;
+    private final int id;
+    private final int row;
+    private final Book oldBook;
+    private final Book book;
+
+    public CatalogEvent(Type type, int id, int row, Book oldBook, Book book) {
+        this.type = type;
+        this.id = id;
+        this.row = row;
+        this.oldBook = oldBook;
+        this.book = book;
+    }
+
+    public static CatalogEvent bulk() {
+        return new CatalogEvent(Type.BULK, -1, -1, null, null);
+    }
+
+    public Type getType() { return type; }
+
+    public int getId() { return id; }
+
+    public int getRow() { return row; }
+
+    // The book before an update or the removed book; null otherwise
+    public Book getOldBook() { return oldBook; }
+
+    // The book after an add or update; null otherwise
+    public Book getBook() { return book; }
+}
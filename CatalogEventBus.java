@@ -0,0 +1,57 @@
+import javax.swing.SwingUtilities;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Delivers catalog changes to listeners on the Event Dispatch Thread. Events
+// published from any thread are queued, and one flush per EDT cycle hands the
+// whole batch to every listener. A batch that grows past the limit collapses
+// into a single BULK event, because a full reload is cheaper than replaying it.
+public class CatalogEventBus {
+    private static final int MAX_EVENTS_PER_FLUSH = 256;
+
+    private final List<CatalogListener> listeners = new CopyOnWriteArrayList<>();
+    private List<CatalogEvent> pending = new ArrayList<>();
+    private boolean flushScheduled;
+
+    public void subscribe(CatalogListener listener) {
+        listeners.add(listener);
+    }
+
+    public void unsubscribe(CatalogListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void publish(CatalogEvent event) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            boolean collapsed = pending.size() == 1 && pending.get(0).getType() == CatalogEvent.Type.BULK;
+            if (event.getType() == CatalogEvent.Type.BULK || pending.size() >= MAX_EVENTS_PER_FLUSH) {
+                pending.clear();
+                pending.add(CatalogEvent.bulk());
+            } else if (!collapsed) {
+                pending.add(event);
+            }
+            if (!flushScheduled) {
+                flushScheduled = true;
+                SwingUtilities.invokeLater(this::flush);
+            }
+        }
+    }
+
+    private void flush() {
+        List<CatalogEvent> events;
+        synchronized (this) {
+            events = pending;
+            pending = new ArrayList<>();
+            flushScheduled = false;
+        }
+        List<CatalogEvent> batch = Collections.unmodifiableList(events);
+        for (CatalogListener listener : listeners) {
+            listener.catalogChanged(batch);
+        }
+    }
+}
@@ -0,0 +1,458 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+
+// Durable write-ahead journal of catalog mutations. The catalog hands every
+// add, update and remove to the journal while holding its lock, so records are
+// queued in mutation order. One writer thread drains everything queued, writes
+// it with a single channel write and a single fsync, then completes the
+// futures of the whole batch (group commit). When the journal grows past a
+// threshold it is compacted: the catalog is written to a new columnar
+// snapshot (see MappedBookStore) and the journal starts over. Both files carry a generation number, so a crash
+// between writing the snapshot and truncating the journal never replays
+// stale records on top of a newer snapshot. A batch that fails to write is cut
+// off the journal again and the journal stops: it fails every record from
+// then on, and the catalog refuses further mutations, so nothing is ever
+// appended after records that are missing.
+public class CatalogJournal implements Closeable {
+    private static final int JOURNAL_MAGIC = 0x4C4D534A; // "LMSJ"
+    private static final int HEADER_SIZE = 12;
+    private static final long COMPACT_THRESHOLD_BYTES = 64L * 1024 * 1024;
+
+    private static final byte ADD = 1;
+    private static final byte UPDATE = 2;
+    private static final byte REMOVE = 3;
+
+    private final Catalog catalog;
+    private final Path directory;
+    private final Path journalPath;
+    private final FileChannel channel;
+    private final Thread writer;
+    private long generation;
+    private long journalBytes;
+
+    private final Object queueLock = new Object();
+    private List<byte[]> queuedRecords = new ArrayList<>();
+    private List<CompletableFuture<Void>> queuedFutures = new ArrayList<>();
+    private boolean closing;
+    private volatile IOException failure; // Set once, under queueLock
+
+    private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(256 * 1024);
+
+    // Restores the catalog saved in directory: the newest snapshot is mapped,
+    // not read, and the journal written since is replayed on top of it. With no
+    // snapshot the catalog starts out on emptyStore. The returned journal is
+    // attached to the catalog and records every further mutation.
+    public static CatalogJournal open(Path directory, BookStore emptyStore) throws IOException {
+        Files.createDirectories(directory);
+        CatalogJournal journal = new CatalogJournal(directory, emptyStore);
+        journal.catalog.setJournal(journal);
+        journal.catalog.indexInBackground();
+        journal.writer.start();
+        return journal;
+    }
+
+    private CatalogJournal(Path directory, BookStore emptyStore) throws IOException {
+        this.directory = directory;
+        this.journalPath = directory.resolve("catalog.journal");
+
+        long snapshotGeneration = latestSnapshot();
+        if (snapshotGeneration > 0) {
+            MappedBookStore snapshot = MappedBookStore.open(snapshotPath(snapshotGeneration));
+            catalog = new Catalog(snapshot);
+            deleteSnapshotsBefore(snapshotGeneration);
+        } else {
+            catalog = new Catalog(emptyStore);
+        }
+        channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        generation = snapshotGeneration;
+        journalBytes = replayJournal(snapshotGeneration);
+
+        writer = new Thread(this::writeLoop, "catalog-journal");
+        writer.setDaemon(true);
+    }
+
+    public Catalog getCatalog() {
+        return catalog;
+    }
+
+    public CompletableFuture<Void> logAdd(Book book) {
+        return enqueue(encode(ADD, null, book));
+    }
+
+    public CompletableFuture<Void> logUpdate(String oldIsbn, Book book) {
+        return enqueue(encode(UPDATE, oldIsbn, book));
+    }
+
+    public CompletableFuture<Void> logRemove(String isbn) {
+        return enqueue(encode(REMOVE, isbn, null));
+    }
+
+    // The error that stopped the journal, or null while it is writing
+    public IOException getFailure() {
+        return failure;
+    }
+
+    // Writes everything still queued and stops the writer thread
+    @Override
+    public void close() throws IOException {
+        synchronized (queueLock) {
+            closing = true;
+            queueLock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private CompletableFuture<Void> enqueue(byte[] record) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (queueLock) {
+            if (failure != null) {
+                future.completeExceptionally(failure);
+                return future;
+            }
+            if (closing) {
+                future.completeExceptionally(new IOException("Journal is closed"));
+                return future;
+            }
+            queuedRecords.add(record);
+            queuedFutures.add(future);
+            queueLock.notifyAll();
+        }
+        return future;
+    }
+
+    private void writeLoop() {
+        while (true) {
+            List<byte[]> records;
+            List<CompletableFuture<Void>> futures;
+            synchronized (queueLock) {
+                while (queuedRecords.isEmpty() && !closing) {
+                    try {
+                        queueLock.wait();
+                    } catch (InterruptedException e) {
+                        closing = true;
+                    }
+                }
+                if (queuedRecords.isEmpty()) {
+                    return;
+                }
+                records = queuedRecords;
+                futures = queuedFutures;
+                queuedRecords = new ArrayList<>();
+                queuedFutures = new ArrayList<>();
+            }
+            try {
+                writeBatch(records);
+                complete(futures, null);
+                if (journalBytes > COMPACT_THRESHOLD_BYTES) {
+                    compact();
+                }
+            } catch (IOException e) {
+                fail(e, futures);
+                return;
+            }
+        }
+    }
+
+    // Stops the journal: the batch and everything queued behind it fail
+    private void fail(IOException error, List<CompletableFuture<Void>> futures) {
+        List<CompletableFuture<Void>> queued;
+        synchronized (queueLock) {
+            failure = error;
+            queued = queuedFutures;
+            queuedRecords = new ArrayList<>();
+            queuedFutures = new ArrayList<>();
+        }
+        complete(futures, error);
+        complete(queued, error);
+    }
+
+    private void writeBatch(List<byte[]> records) throws IOException {
+        long batchStart = journalBytes;
+        try {
+            for (byte[] record : records) {
+                if (writeBuffer.remaining() < record.length) {
+                    drainWriteBuffer();
+                    if (writeBuffer.capacity() < record.length) {
+                        writeBuffer = ByteBuffer.allocateDirect(record.length);
+                    }
+                }
+                writeBuffer.put(record);
+            }
+            drainWriteBuffer();
+            channel.force(false);
+        } catch (IOException e) {
+            // Whatever part of the batch got written is cut off again, so a
+            // replay never applies records whose futures failed
+            writeBuffer.clear();
+            journalBytes = batchStart;
+            try {
+                channel.truncate(batchStart);
+                channel.force(false);
+            } catch (IOException truncateError) {
+                e.addSuppressed(truncateError);
+            }
+            throw e;
+        }
+    }
+
+    private void drainWriteBuffer() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            journalBytes += channel.write(writeBuffer, journalBytes);
+        }
+        writeBuffer.clear();
+    }
+
+    // Runs on the writer thread. Records queued before the catalog was copied
+    // are already part of the snapshot, so they are dropped from the journal;
+    // if the snapshot then fails they are lost, and the journal stops.
+    private void compact() throws IOException {
+        List<CompletableFuture<Void>> covered = new ArrayList<>();
+        Book[] books = catalog.toArray(() -> {
+            synchronized (queueLock) {
+                covered.addAll(queuedFutures);
+                queuedRecords = new ArrayList<>();
+                queuedFutures = new ArrayList<>();
+            }
+        });
+        try {
+            long nextGeneration = generation + 1;
+            writeSnapshot(books, nextGeneration);
+            channel.truncate(0);
+            writeHeader(nextGeneration);
+            generation = nextGeneration;
+            deleteSnapshotsBefore(nextGeneration);
+            complete(covered, null);
+        } catch (IOException e) {
+            complete(covered, e);
+            throw e;
+        }
+    }
+
+    private void writeSnapshot(Book[] books, long snapshotGeneration) throws IOException {
+        Path target = snapshotPath(snapshotGeneration);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        MappedBookStore.write(temp, books, snapshotGeneration);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path snapshotPath(long snapshotGeneration) {
+        return directory.resolve("catalog-" + snapshotGeneration + ".snapshot");
+    }
+
+    // Generation of the newest complete snapshot in the directory, or 0
+    private long latestSnapshot() throws IOException {
+        long latest = 0;
+        try (DirectoryStream<Path> snapshots = Files.newDirectoryStream(directory, "catalog-*.snapshot")) {
+            for (Path snapshot : snapshots) {
+                String name = snapshot.getFileName().toString();
+                try {
+                    latest = Math.max(latest, Long.parseLong(name.substring(8, name.length() - 9)));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        return latest;
+    }
+
+    // A snapshot may still be mapped by the running catalog, which some
+    // platforms refuse to delete; whatever is left is retried on the next start
+    private void deleteSnapshotsBefore(long keepGeneration) {
+        for (long old = keepGeneration - 1; old > 0 && Files.exists(snapshotPath(old)); old--) {
+            try {
+                Files.delete(snapshotPath(old));
+            } catch (IOException e) {
+                break;
+            }
+        }
+    }
+
+    // Applies every intact record and cuts off a torn tail left by a crash.
+    // Returns the length of the valid journal.
+    private long replayJournal(long snapshotGeneration) throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            channel.truncate(0);
+            writeHeader(snapshotGeneration);
+            return HEADER_SIZE;
+        }
+        InputStream in = new BufferedInputStream(Channels.newInputStream(channel.position(0)), 1024 * 1024);
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != JOURNAL_MAGIC) {
+            throw new IOException("Not a catalog journal: " + journalPath);
+        }
+        if (data.readLong() != snapshotGeneration) {
+            // Left over from before the last compaction; the snapshot already has it
+            channel.truncate(0);
+            writeHeader(snapshotGeneration);
+            return HEADER_SIZE;
+        }
+
+        long validLength = HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        while (true) {
+            byte[] payload;
+            try {
+                int length = data.readInt();
+                int checksum = data.readInt();
+                if (length <= 0 || length > channel.size()) {
+                    break;
+                }
+                payload = new byte[length];
+                data.readFully(payload);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            apply(payload);
+            validLength += 8 + payload.length;
+        }
+        if (validLength < channel.size()) {
+            channel.truncate(validLength);
+        }
+        return validLength;
+    }
+
+    private void apply(byte[] payload) throws IOException {
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = data.readByte();
+        switch (type) {
+            case ADD:
+                catalog.add(readBook(data));
+                break;
+            case UPDATE: {
+                int id = catalog.findByIsbn(readString(data));
+                Book book = readBook(data);
+                if (id >= 0) {
+                    catalog.update(id, book);
+                }
+                break;
+            }
+            case REMOVE: {
+                int id = catalog.findByIsbn(readString(data));
+                if (id >= 0) {
+                    catalog.remove(id);
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    private void writeHeader(long headerGeneration) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(JOURNAL_MAGIC).putLong(headerGeneration).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(false);
+        journalBytes = HEADER_SIZE;
+    }
+
+    // Record layout: payload length, CRC32 of the payload, then the payload
+    private static byte[] encode(byte type, String isbn, Book book) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.writeInt(0);
+            data.writeInt(0);
+            data.writeByte(type);
+            if (isbn != null) {
+                writeString(data, isbn);
+            }
+            if (book != null) {
+                writeBook(data, book);
+            }
+            byte[] record = bytes.toByteArray();
+            int length = record.length - 8;
+            CRC32 crc = new CRC32();
+            crc.update(record, 8, length);
+            ByteBuffer.wrap(record).putInt(length).putInt((int) crc.getValue());
+            return record;
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Writing to memory does not fail
+        }
+    }
+
+    private static void writeBook(DataOutputStream data, Book book) throws IOException {
+        writeString(data, book.getTitle());
+        writeString(data, book.getAuthor());
+        writeString(data, book.getIsbn());
+        writeString(data, book.getCategory());
+        writeString(data, book.getDescription());
+        data.writeInt(book.getYear());
+        data.writeBoolean(book.isAvailable());
+    }
+
+    private static Book readBook(DataInputStream data) throws IOException {
+        String title = readString(data);
+        String author = readString(data);
+        String isbn = readString(data);
+        String category = readString(data);
+        String description = readString(data);
+        int year = data.readInt();
+        boolean available = data.readBoolean();
+        return new Book(title, author, isbn, category, description, year, available);
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        if (value == null) {
+            data.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(DataInputStream data) throws IOException {
+        int length = data.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void complete(List<CompletableFuture<Void>> futures, Throwable error) {
+        for (CompletableFuture<Void> future : futures) {
+            if (error == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,6 @@
+import java.util.List;
+
+// Receives catalog changes on the Event Dispatch Thread, batched per EDT cycle
+public interface CatalogListener {
+    void catalogChanged(List<CatalogEvent> events);
+}
@@ -0,0 +1,124 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Latency histograms and counts of every catalog and search operation, and of
+// the panels' table rebuilds. Callers take System.nanoTime() before the work
+// and hand it to record afterwards, which allocates nothing. Operations are
+// timed from the caller's side, so waiting for the catalog lock counts.
+public class CatalogMetrics implements CatalogMetricsMXBean {
+    public enum Operation {
+        SEARCH("Search"),
+        FUZZY_SEARCH("Fuzzy search"),
+        DESCRIPTION_SEARCH("Description search"),
+        SORT("Sort"),
+        ADD("Add"),
+        ADD_ALL("Batch add"),
+        REMOVE("Remove"),
+        UPDATE("Edit"),
+        CHECKOUT("Checkout or return"),
+        TABLE_REBUILD("Table rebuild"),
+        CATEGORY_COUNTS("Category counts");
+
+        private final String title;
+
+        Operation(String title) {
+            this.title = title;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+    }
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Operation.values().length];
+    private final QueryCache queryCache;
+    private volatile long since = System.nanoTime();
+
+    public CatalogMetrics(QueryCache queryCache) {
+        this.queryCache = queryCache;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(Operation operation, long startNanos) {
+        histograms[operation.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    public LatencyHistogram get(Operation operation) {
+        return histograms[operation.ordinal()];
+    }
+
+    // Publishes the metrics to the platform MBean server; false if that failed,
+    // for example because another catalog in this JVM already did
+    public boolean register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("library:type=CatalogMetrics"));
+            return true;
+        } catch (JMException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public Map<String, OperationStats> getOperations() {
+        double seconds = Math.max((System.nanoTime() - since) / 1e9, 1e-9);
+        Map<String, OperationStats> operations = new LinkedHashMap<>();
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = get(operation);
+            long count = histogram.getCount();
+            operations.put(operation.getTitle(), new OperationStats(count, count / seconds,
+                micros(histogram.percentile(0.5)), micros(histogram.percentile(0.9)),
+                micros(histogram.percentile(0.99)), micros(histogram.percentile(0.999)),
+                micros(histogram.getMax())));
+        }
+        return operations;
+    }
+
+    @Override
+    public double getQueryCacheHitRate() {
+        return queryCache.getHitRate();
+    }
+
+    @Override
+    public long getQueryCacheHits() {
+        return queryCache.getHits();
+    }
+
+    @Override
+    public long getQueryCacheMisses() {
+        return queryCache.getMisses();
+    }
+
+    @Override
+    public int getQueryCacheEntries() {
+        return queryCache.size();
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        since = System.nanoTime();
+    }
+
+    // A duration the way the panels show it: microseconds below a millisecond,
+    // then "12.3 ms" or "2.1 s"
+    public static String format(long nanos) {
+        if (nanos < 1_000_000) {
+            return (nanos / 1000) + " \u00b5s";
+        }
+        if (nanos < 1_000_000_000) {
+            return String.format("%.1f ms", nanos / 1e6);
+        }
+        return String.format("%.1f s", nanos / 1e9);
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+}
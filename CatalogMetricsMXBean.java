@@ -0,0 +1,18 @@
+import java.util.Map;
+
+// What CatalogMetrics shows over JMX, as library:type=CatalogMetrics
+public interface CatalogMetricsMXBean {
+    // Latency percentiles and throughput of every operation, by name
+    Map<String, OperationStats> getOperations();
+
+    double getQueryCacheHitRate();
+
+    long getQueryCacheHits();
+
+    long getQueryCacheMisses();
+
+    int getQueryCacheEntries();
+
+    // Starts every histogram and the throughput clock over
+    void reset();
+}
@@ -0,0 +1,39 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Number of books per category, kept current by the catalog as books are
+// added, removed and edited, so views never have to count books themselves.
+public class CategoryCounts {
+    private final Map<String, int[]> counts = new HashMap<>();
+
+    public synchronized void increment(String category) {
+        int[] count = counts.get(category);
+        if (count == null) {
+            count = new int[1];
+            counts.put(category, count);
+        }
+        count[0]++;
+    }
+
+    public synchronized void decrement(String category) {
+        int[] count = counts.get(category);
+        if (count != null && --count[0] == 0) {
+            counts.remove(category);
+        }
+    }
+
+    public synchronized int get(String category) {
+        int[] count = counts.get(category);
+        return count == null ? 0 : count[0];
+    }
+
+    // Every category that has books, by name
+    public synchronized Map<String, Integer> toMap() {
+        Map<String, Integer> copy = new TreeMap<>();
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue()[0]);
+        }
+        return copy;
+    }
+}
@@ -2,8 +2,10 @@ import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 public class CategoryPanel extends JPanel {
     private JTable categoryTable;
@@ -11,12 +13,31 @@ public class CategoryPanel extends JPanel {
     private JTextField categoryField;
     private JButton addButton, removeButton;
     private List<String> categories;
-    private List<Book> allBooks;
+    private final Catalog catalog;
+
+    // Patches the count of every category touched by a batch of catalog events
+    private final CatalogListener catalogListener = events -> {
+        Set<String> changed = new HashSet<>();
+        for (CatalogEvent event : events) {
+            if (event.getType() == CatalogEvent.Type.BULK) {
+                updateCounts(categories);
+                return;
+            }
+            if (event.getOldBook() != null) {
+                changed.add(event.getOldBook().getCategory());
+            }
+            if (event.getBook() != null) {
+                changed.add(event.getBook().getCategory());
+            }
+        }
+        updateCounts(changed);
+    };
 
-    public CategoryPanel() {
+    public CategoryPanel(Catalog catalog) {
+        this.catalog = catalog;
         setLayout(new BorderLayout());
         categories = new ArrayList<>();
-        allBooks = new ArrayList<>();
+        catalog.addCatalogListener(catalogListener);
         initializeComponents();
         loadDefaultCategories();
     }
@@ -64,11 +85,6 @@ public class CategoryPanel extends JPanel {
         addCategoryToList("History");
     }
 
-    public void setBooks(List<Book> books) {
-        this.allBooks = books;
-        updateCategoryCounts();
-    }
-
     private void addCategory() {
         String category = categoryField.getText().trim();
         if (category.isEmpty()) {
@@ -87,7 +103,7 @@ public class CategoryPanel extends JPanel {
 
     private void addCategoryToList(String category) {
         categories.add(category);
-        updateCategoryCounts();
+        tableModel.addRow(new Object[]{category, catalog.getCategoryCounts().get(category)});
     }
 
     private void removeCategory() {
@@ -97,18 +113,30 @@ public class CategoryPanel extends JPanel {
             return;
         }
 
-        String category = (String) tableModel.getValueAt(selectedRow, 0);
-        categories.remove(category);
-        updateCategoryCounts();
+        categories.remove(selectedRow);
+        tableModel.removeRow(selectedRow);
     }
 
     private void updateCategoryCounts() {
+        long start = System.nanoTime();
+        CategoryCounts counts = catalog.getCategoryCounts();
         tableModel.setRowCount(0);
         for (String category : categories) {
-            long count = allBooks.stream()
-                .filter(book -> book.getCategory().equals(category))
-                .count();
-            tableModel.addRow(new Object[]{category, count});
+            tableModel.addRow(new Object[]{category, counts.get(category)});
+        }
+        catalog.getMetrics().record(CatalogMetrics.Operation.CATEGORY_COUNTS, start);
+    }
+
+    // Patches only the rows of the given categories
+    private void updateCounts(Collection<String> changed) {
+        long start = System.nanoTime();
+        CategoryCounts counts = catalog.getCategoryCounts();
+        for (String category : changed) {
+            int row = categories.indexOf(category);
+            if (row >= 0) {
+                tableModel.setValueAt(counts.get(category), row, 1);
+            }
         }
+        catalog.getMetrics().record(CatalogMetrics.Operation.CATEGORY_COUNTS, start);
     }
 } 
\ No newline at end of file
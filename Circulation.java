@@ -0,0 +1,570 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Issues and returns books for registered members. Every book in the catalog
+// is one copy, and its circulation state is a single slot: a Loan while it is
+// out, a Reservation while it waits on the hold shelf for the first member in
+// its holds queue, Returned once it is back on the shelf, and empty for a copy
+// circulation has not touched, whose catalog Available flag says whether it
+// is on the shelf. Slots only change by compare-and-set, so concurrent
+// checkouts of the same copy are settled without a lock: exactly one wins and
+// the rest see the copy taken. The slot decides; the catalog's Available flag
+// follows it, written by a publisher thread in batches, so the book tables and
+// the journal see circulation like any other edit without any checkout waiting
+// on the catalog's write lock. Loans and holds live in memory; with a
+// BorrowingHistory attached, every loan, return, renewal and hold is also
+// recorded, and members are saved with it. On start the open loans and the
+// holds queues are rebuilt from the history, so both carry on across runs.
+// Once the history or the catalog journal fails, circulation is refused.
+public class Circulation {
+    public enum Problem {
+        UNKNOWN_MEMBER("No member has this number!"),
+        UNKNOWN_BOOK("This book is not in the catalog!"),
+        NOT_AVAILABLE("This book is already checked out!"),
+        HELD_FOR_ANOTHER("This book is on the hold shelf for another member!"),
+        NOT_ON_LOAN("This book is not checked out!"),
+        HOLDS_WAITING("Other members are waiting for this book!"),
+        ON_SHELF("This book is on the shelf, so it can be checked out right away!"),
+        ALREADY_BORROWED("This member already has this book!"),
+        ALREADY_HOLDING("This member already has a hold on this book!"),
+        NOT_SAVED("Circulation can no longer be saved; restart the library!");
+
+        private final String message;
+
+        Problem(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    public static final int DEFAULT_LOAN_DAYS = 14;
+
+    // Slots are kept in pages created on first use, so the table grows with the
+    // catalog without ever copying; the directory covers every possible id
+    private static final int PAGE_BITS = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private final Catalog catalog;
+    private final Clock clock;
+    private final int loanDays;
+    private final BorrowingHistory history; // null when not kept
+    private final AtomicReferenceArray<AtomicReferenceArray<Object>> pages =
+        new AtomicReferenceArray<>(1 << (31 - PAGE_BITS));
+    private final AtomicInteger nextMemberNumber = new AtomicInteger(1);
+    private final Map<Integer, Member> members = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> loansByMember = new ConcurrentHashMap<>();
+    private final Map<Integer, Queue<Integer>> holds = new ConcurrentHashMap<>();
+    private final Queue<Integer> unpublished = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean publisherAwake = new AtomicBoolean(true);
+    private final Object publishing = new Object();
+    private final Thread publisher;
+
+    // A returned copy set aside for the member at the head of its holds queue
+    private static final class Reservation {
+        final int memberNumber;
+
+        Reservation(int memberNumber) {
+            this.memberNumber = memberNumber;
+        }
+    }
+
+    // What the history says about one copy: its open loan, if any, and its holds queue
+    private static final class Restored {
+        int memberNumber = -1; // Of the open loan, or -1
+        LocalDate issued;
+        LocalDate due;
+        boolean returned; // Whether the last loan recorded has come back
+        final List<Integer> holds = new ArrayList<>();
+    }
+
+    // A copy back on the shelf. Once its flag is published the slot empties
+    // again, so a later edit of the flag through the book form counts; until
+    // then the catalog may still show the copy out. Each return makes a new
+    // one, so the publisher never empties a slot that changed meanwhile.
+    private static final class Returned {
+    }
+
+    public Circulation(Catalog catalog) {
+        this(catalog, null);
+    }
+
+    public Circulation(Catalog catalog, BorrowingHistory history) {
+        this(catalog, Clock.systemDefaultZone(), DEFAULT_LOAN_DAYS, history);
+    }
+
+    // Throws UncheckedIOException if the history cannot be read back
+    public Circulation(Catalog catalog, Clock clock, int loanDays, BorrowingHistory history) {
+        if (loanDays < 1) {
+            throw new IllegalArgumentException("Loans must last at least a day");
+        }
+        this.catalog = catalog;
+        this.clock = clock;
+        this.loanDays = loanDays;
+        this.history = history;
+        if (history != null) {
+            int last = 0;
+            for (Member member : history.getMembers()) {
+                members.put(member.getNumber(), member);
+                last = Math.max(last, member.getNumber());
+            }
+            nextMemberNumber.set(last + 1);
+        }
+        publisher = new Thread(this::publishLoop, "circulation-publisher");
+        publisher.setDaemon(true);
+        if (history != null) {
+            try {
+                restore();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read the borrowing history", e);
+            }
+        }
+        publisher.start();
+    }
+
+    // Returns null if the member could not be saved with the history; their
+    // number is then never handed out
+    public Member registerMember(String name) {
+        Member member = new Member(nextMemberNumber.getAndIncrement(), name);
+        if (history != null) {
+            try {
+                history.addMember(member);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        members.put(member.getNumber(), member);
+        return member;
+    }
+
+    // Returns the member with this number, or null
+    public Member getMember(int number) {
+        return members.get(number);
+    }
+
+    // The error that stops circulation from being saved, or null
+    public IOException getFailure() {
+        IOException failure = history == null ? null : history.getFailure();
+        return failure != null ? failure : catalog.getJournalFailure();
+    }
+
+    // Completes once everything circulated so far is in the history, or
+    // exceptionally with its error; at once without a history
+    public CompletableFuture<Void> whenSaved() {
+        return history == null ? CompletableFuture.completedFuture(null) : history.whenRecorded();
+    }
+
+    // Returns the problem that stopped the checkout, or null once the copy is out
+    public Problem checkout(int bookId, int memberNumber) {
+        if (getFailure() != null) {
+            return Problem.NOT_SAVED;
+        }
+        if (!members.containsKey(memberNumber)) {
+            return Problem.UNKNOWN_MEMBER;
+        }
+        Book book = catalog.get(bookId);
+        if (book == null) {
+            return Problem.UNKNOWN_BOOK;
+        }
+        AtomicReferenceArray<Object> page = page(bookId);
+        int slot = bookId & (PAGE_SIZE - 1);
+        LocalDate today = LocalDate.now(clock);
+        Loan loan = new Loan(bookId, book.getIsbn(), memberNumber, today, today.plusDays(loanDays));
+        while (true) {
+            Object state = page.get(slot);
+            if (state instanceof Loan) {
+                return ((Loan) state).getMemberNumber() == memberNumber
+                    ? Problem.ALREADY_BORROWED : Problem.NOT_AVAILABLE;
+            }
+            if (state instanceof Reservation && ((Reservation) state).memberNumber != memberNumber) {
+                return Problem.HELD_FOR_ANOTHER;
+            }
+            // An empty slot on a book marked unavailable was taken out through the book form
+            if (state == null && !catalog.isAvailable(bookId)) {
+                return Problem.NOT_AVAILABLE;
+            }
+            if (page.compareAndSet(slot, state, loan)) {
+                break;
+            }
+        }
+        Queue<Integer> queue = holds.get(bookId);
+        if (queue != null) {
+            queue.remove(memberNumber);
+        }
+        loansByMember.computeIfAbsent(memberNumber, n -> ConcurrentHashMap.newKeySet()).add(bookId);
+        publish(bookId);
+        if (history != null) {
+            history.record(HistoryEvent.Type.LOAN, loan.getIsbn(), memberNumber);
+        }
+        return null;
+    }
+
+    // Takes the copy back; it goes to the hold shelf if someone is waiting for it
+    public Problem checkin(int bookId) {
+        if (getFailure() != null) {
+            return Problem.NOT_SAVED;
+        }
+        AtomicReferenceArray<Object> page = existingPage(bookId);
+        int slot = bookId & (PAGE_SIZE - 1);
+        while (true) {
+            Object state = page == null ? null : page.get(slot);
+            if (!(state instanceof Loan)) {
+                Book book = state == null ? catalog.get(bookId) : null;
+                if (book == null || book.isAvailable()) {
+                    return Problem.NOT_ON_LOAN;
+                }
+                // Out since before circulation was tracking it; the borrower is unknown
+                if (page(bookId).compareAndSet(slot, null, nextReservation(bookId))) {
+                    publish(bookId);
+                    if (history != null) {
+                        history.record(HistoryEvent.Type.RETURN, book.getIsbn(), 0);
+                    }
+                    return null;
+                }
+                page = existingPage(bookId);
+                continue;
+            }
+            Loan loan = (Loan) state;
+            if (page.compareAndSet(slot, state, nextReservation(bookId))) {
+                Set<Integer> borrowed = loansByMember.get(loan.getMemberNumber());
+                if (borrowed != null) {
+                    borrowed.remove(bookId);
+                }
+                publish(bookId);
+                if (history != null) {
+                    history.record(HistoryEvent.Type.RETURN, loan.getIsbn(), loan.getMemberNumber());
+                }
+                return null;
+            }
+        }
+    }
+
+    // Extends the loan from today, unless other members are waiting for the copy
+    public Problem renew(int bookId) {
+        if (getFailure() != null) {
+            return Problem.NOT_SAVED;
+        }
+        AtomicReferenceArray<Object> page = existingPage(bookId);
+        int slot = bookId & (PAGE_SIZE - 1);
+        LocalDate today = LocalDate.now(clock);
+        while (true) {
+            Object state = page == null ? null : page.get(slot);
+            if (!(state instanceof Loan)) {
+                return Problem.NOT_ON_LOAN;
+            }
+            Queue<Integer> queue = holds.get(bookId);
+            if (queue != null && !queue.isEmpty()) {
+                return Problem.HOLDS_WAITING;
+            }
+            Loan loan = (Loan) state;
+            Loan renewed = new Loan(bookId, loan.getIsbn(), loan.getMemberNumber(), loan.getIssued(),
+                today.plusDays(loanDays));
+            if (page.compareAndSet(slot, state, renewed)) {
+                if (history != null) {
+                    history.record(HistoryEvent.Type.RENEW, loan.getIsbn(), loan.getMemberNumber());
+                }
+                return null;
+            }
+        }
+    }
+
+    // Queues the member for a copy that is out or already held for someone else
+    public Problem placeHold(int bookId, int memberNumber) {
+        if (getFailure() != null) {
+            return Problem.NOT_SAVED;
+        }
+        if (!members.containsKey(memberNumber)) {
+            return Problem.UNKNOWN_MEMBER;
+        }
+        if (!catalog.contains(bookId)) {
+            return Problem.UNKNOWN_BOOK;
+        }
+        Object state = state(bookId);
+        if (onShelf(bookId, state)) {
+            return Problem.ON_SHELF;
+        }
+        if (state instanceof Loan && ((Loan) state).getMemberNumber() == memberNumber) {
+            return Problem.ALREADY_BORROWED;
+        }
+        if (state instanceof Reservation && ((Reservation) state).memberNumber == memberNumber) {
+            return Problem.ALREADY_HOLDING;
+        }
+        Queue<Integer> queue = holds.computeIfAbsent(bookId, id -> new ConcurrentLinkedQueue<>());
+        if (queue.contains(memberNumber)) {
+            return Problem.ALREADY_HOLDING;
+        }
+        queue.add(memberNumber);
+        if (history != null) {
+            history.record(HistoryEvent.Type.HOLD, catalog.getIsbn(bookId), memberNumber);
+        }
+        // The copy may have come back while the hold was being placed
+        AtomicReferenceArray<Object> page = page(bookId);
+        int slot = bookId & (PAGE_SIZE - 1);
+        Object current = page.get(slot);
+        if (onShelf(bookId, current)) {
+            Object next = nextReservation(bookId);
+            if (next instanceof Reservation && page.compareAndSet(slot, current, next)) {
+                publish(bookId);
+            }
+        }
+        return null;
+    }
+
+    // Drops the member's hold; a copy waiting for them moves on to the next in line
+    public Problem cancelHold(int bookId, int memberNumber) {
+        if (getFailure() != null) {
+            return Problem.NOT_SAVED;
+        }
+        Queue<Integer> queue = holds.get(bookId);
+        if (queue != null && queue.remove(memberNumber) && history != null) {
+            history.record(HistoryEvent.Type.CANCEL_HOLD, catalog.getIsbn(bookId), memberNumber);
+        }
+        AtomicReferenceArray<Object> page = existingPage(bookId);
+        if (page == null) {
+            return null;
+        }
+        int slot = bookId & (PAGE_SIZE - 1);
+        Object state = page.get(slot);
+        while (state instanceof Reservation && ((Reservation) state).memberNumber == memberNumber) {
+            if (page.compareAndSet(slot, state, nextReservation(bookId))) {
+                publish(bookId);
+                return null;
+            }
+            state = page.get(slot);
+        }
+        return null;
+    }
+
+    // Returns the copy's current loan, or null if it is not out
+    public Loan getLoan(int bookId) {
+        Object state = state(bookId);
+        return state instanceof Loan ? (Loan) state : null;
+    }
+
+    // Returns the member the copy is set aside for, or -1
+    public int getReservedFor(int bookId) {
+        Object state = state(bookId);
+        return state instanceof Reservation ? ((Reservation) state).memberNumber : -1;
+    }
+
+    // Member numbers waiting for the copy, first in line first
+    public List<Integer> getHolds(int bookId) {
+        Queue<Integer> queue = holds.get(bookId);
+        return queue == null ? Collections.<Integer>emptyList() : new ArrayList<>(queue);
+    }
+
+    public List<Loan> getLoans(int memberNumber) {
+        List<Loan> loans = new ArrayList<>();
+        Set<Integer> borrowed = loansByMember.get(memberNumber);
+        if (borrowed != null) {
+            for (int bookId : borrowed) {
+                Loan loan = getLoan(bookId);
+                if (loan != null && loan.getMemberNumber() == memberNumber) {
+                    loans.add(loan);
+                }
+            }
+        }
+        return loans;
+    }
+
+    // Loans past their due date, in book id order
+    public List<Loan> getOverdueLoans() {
+        LocalDate today = LocalDate.now(clock);
+        List<Loan> overdue = new ArrayList<>();
+        int idBound = catalog.getIdBound();
+        for (int index = 0; index << PAGE_BITS < idBound && index < pages.length(); index++) {
+            AtomicReferenceArray<Object> page = pages.get(index);
+            if (page == null) {
+                continue;
+            }
+            for (int slot = 0; slot < PAGE_SIZE; slot++) {
+                Object state = page.get(slot);
+                if (state instanceof Loan && ((Loan) state).isOverdue(today)) {
+                    overdue.add((Loan) state);
+                }
+            }
+        }
+        return overdue;
+    }
+
+    // Writes every Available flag still to be published to the catalog before
+    // returning, so the journal has them; for shutdown and for callers that
+    // read the flags right after circulating
+    public void flush() {
+        synchronized (publishing) {
+            publishQueued();
+        }
+    }
+
+    // Replays the history into the slots: every copy still out gets its loan
+    // back, due as it was last set, and every holds queue is rebuilt. A copy
+    // with holds that came back after its last loan waits on the hold shelf
+    // for the first in line, as it did before; one with holds that was never
+    // lent through circulation is out through the book form, and stays that
+    // way. Books since removed from the catalog are skipped.
+    private void restore() throws IOException {
+        Map<String, Restored> copies = new HashMap<>();
+        history.replay(event -> {
+            Restored copy = copies.computeIfAbsent(event.getIsbn(), isbn -> new Restored());
+            LocalDate day = event.getInstant().atZone(clock.getZone()).toLocalDate();
+            Integer member = event.getMemberNumber();
+            switch (event.getType()) {
+                case LOAN:
+                    copy.memberNumber = event.getMemberNumber();
+                    copy.issued = day;
+                    copy.due = day.plusDays(loanDays);
+                    copy.holds.remove(member);
+                    break;
+                case RETURN:
+                    copy.memberNumber = -1;
+                    copy.returned = true;
+                    break;
+                case RENEW:
+                    copy.due = day.plusDays(loanDays);
+                    break;
+                case HOLD:
+                    if (!copy.holds.contains(member)) {
+                        copy.holds.add(member);
+                    }
+                    break;
+                case CANCEL_HOLD:
+                    copy.holds.remove(member);
+                    break;
+            }
+        });
+        for (Map.Entry<String, Restored> entry : copies.entrySet()) {
+            Restored copy = entry.getValue();
+            if (copy.memberNumber < 0 && copy.holds.isEmpty()) {
+                continue;
+            }
+            int bookId = catalog.findByIsbn(entry.getKey());
+            if (bookId < 0) {
+                continue;
+            }
+            if (!copy.holds.isEmpty()) {
+                holds.put(bookId, new ConcurrentLinkedQueue<>(copy.holds));
+            }
+            Object state;
+            if (copy.memberNumber >= 0) {
+                state = new Loan(bookId, catalog.getIsbn(bookId), copy.memberNumber, copy.issued, copy.due);
+                loansByMember.computeIfAbsent(copy.memberNumber, n -> ConcurrentHashMap.newKeySet()).add(bookId);
+            } else if (copy.returned) {
+                state = new Reservation(copy.holds.get(0));
+            } else {
+                continue;
+            }
+            page(bookId).set(bookId & (PAGE_SIZE - 1), state);
+            publish(bookId);
+        }
+    }
+
+    // What a copy coming back to the shelf turns into: a Reservation for the
+    // first member waiting, or Returned
+    private Object nextReservation(int bookId) {
+        Queue<Integer> queue = holds.get(bookId);
+        Integer next = queue == null ? null : queue.peek();
+        return next == null ? new Returned() : new Reservation(next);
+    }
+
+    private boolean onShelf(int bookId, Object state) {
+        return state instanceof Returned || state == null && catalog.isAvailable(bookId);
+    }
+
+    // Queues the copy's flag for the publisher; the slot has already changed.
+    // Only the first copy queued after the publisher went idle wakes it.
+    private void publish(int bookId) {
+        unpublished.add(bookId);
+        if (!publisherAwake.get() && publisherAwake.compareAndSet(false, true)) {
+            LockSupport.unpark(publisher);
+        }
+    }
+
+    private void publishLoop() {
+        while (true) {
+            if (unpublished.isEmpty()) {
+                publisherAwake.set(false);
+                if (unpublished.isEmpty()) { // Anything queued from here on wakes it
+                    LockSupport.park(this);
+                }
+                publisherAwake.set(true);
+            }
+            synchronized (publishing) {
+                publishQueued();
+            }
+        }
+    }
+
+    // Writes the flags of every queued copy, as their slots are now, under one
+    // hold of the catalog's write lock. A copy that changes again meanwhile is
+    // queued again, so the last write always reflects the final state.
+    private void publishQueued() {
+        List<Integer> queued = new ArrayList<>();
+        Integer next = unpublished.poll();
+        while (next != null) {
+            queued.add(next);
+            next = unpublished.poll();
+        }
+        if (queued.isEmpty()) {
+            return;
+        }
+        int[] ids = new int[queued.size()];
+        boolean[] available = new boolean[queued.size()];
+        Object[] states = new Object[queued.size()];
+        int count = 0;
+        for (int bookId : queued) {
+            Object state = state(bookId);
+            if (state != null) { // An empty slot leaves the flag to the catalog
+                ids[count] = bookId;
+                available[count] = state instanceof Returned;
+                states[count++] = state;
+            }
+        }
+        try {
+            catalog.setAvailable(ids, available, count);
+        } catch (UncheckedIOException e) {
+            return; // The catalog journal failed; the slots still hold the truth
+        }
+        for (int i = 0; i < count; i++) {
+            if (states[i] instanceof Returned) {
+                page(ids[i]).compareAndSet(ids[i] & (PAGE_SIZE - 1), states[i], null);
+            }
+        }
+    }
+
+    private Object state(int bookId) {
+        AtomicReferenceArray<Object> page = existingPage(bookId);
+        return page == null ? null : page.get(bookId & (PAGE_SIZE - 1));
+    }
+
+    private AtomicReferenceArray<Object> existingPage(int bookId) {
+        return bookId < 0 ? null : pages.get(bookId >>> PAGE_BITS);
+    }
+
+    private AtomicReferenceArray<Object> page(int bookId) {
+        int index = bookId >>> PAGE_BITS;
+        AtomicReferenceArray<Object> page = pages.get(index);
+        if (page == null) {
+            pages.compareAndSet(index, null, new AtomicReferenceArray<>(PAGE_SIZE));
+            page = pages.get(index);
+        }
+        return page;
+    }
+}
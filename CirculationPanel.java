@@ -0,0 +1,248 @@
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.time.LocalDate;
+
+// Circulation desk: registers members, issues and returns books by ISBN,
+// renews loans and takes holds. The table lists the loans of the member
+// whose number is entered.
+public class CirculationPanel extends JPanel {
+    private final Catalog catalog;
+    private final Circulation circulation;
+    private JTextField nameField, memberField, isbnField;
+    private JButton registerButton, issueButton, returnButton, renewButton, holdButton, showLoansButton;
+    private JTable loanTable;
+    private DefaultTableModel tableModel;
+    private JLabel statusLabel;
+
+    public CirculationPanel(Catalog catalog, Circulation circulation) {
+        this.catalog = catalog;
+        this.circulation = circulation;
+        setLayout(new BorderLayout());
+        initializeComponents();
+    }
+
+    private void initializeComponents() {
+        // Create input panels
+        JPanel memberPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        nameField = new JTextField(20);
+        registerButton = new JButton("Register Member");
+        memberPanel.add(new JLabel("Name:"));
+        memberPanel.add(nameField);
+        memberPanel.add(registerButton);
+
+        JPanel loanPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        memberField = new JTextField(6);
+        isbnField = new JTextField(16);
+        issueButton = new JButton("Issue Book");
+        returnButton = new JButton("Return Book");
+        renewButton = new JButton("Renew");
+        holdButton = new JButton("Place Hold");
+        showLoansButton = new JButton("Show Loans");
+        loanPanel.add(new JLabel("Member #:"));
+        loanPanel.add(memberField);
+        loanPanel.add(new JLabel("ISBN:"));
+        loanPanel.add(isbnField);
+        loanPanel.add(issueButton);
+        loanPanel.add(returnButton);
+        loanPanel.add(renewButton);
+        loanPanel.add(holdButton);
+        loanPanel.add(showLoansButton);
+
+        JPanel inputPanel = new JPanel(new GridLayout(2, 1));
+        inputPanel.add(memberPanel);
+        inputPanel.add(loanPanel);
+
+        // Create table
+        String[] columns = {"Title", "ISBN", "Issued", "Due", "Status"};
+        tableModel = new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        loanTable = new JTable(tableModel);
+        JScrollPane scrollPane = new JScrollPane(loanTable);
+
+        statusLabel = new JLabel("Ready");
+
+        // Add components
+        add(inputPanel, BorderLayout.NORTH);
+        add(scrollPane, BorderLayout.CENTER);
+        add(statusLabel, BorderLayout.SOUTH);
+
+        // Add action listeners
+        registerButton.addActionListener(e -> registerMember());
+        issueButton.addActionListener(e -> issueBook());
+        returnButton.addActionListener(e -> returnBook());
+        renewButton.addActionListener(e -> renewBook());
+        holdButton.addActionListener(e -> placeHold());
+        showLoansButton.addActionListener(e -> showLoans());
+    }
+
+    private void registerMember() {
+        String name = nameField.getText().trim();
+        if (name.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Please enter a member name!");
+            return;
+        }
+
+        Member member = circulation.registerMember(name);
+        if (member == null) {
+            JOptionPane.showMessageDialog(this, "Could not save the new member with the borrowing history!");
+            return;
+        }
+        nameField.setText("");
+        memberField.setText(String.valueOf(member.getNumber()));
+        statusLabel.setText("Registered " + member);
+        showLoans();
+    }
+
+    private void issueBook() {
+        int memberNumber = selectedMember();
+        if (memberNumber < 0) {
+            return;
+        }
+        int bookId = selectedBook();
+        if (bookId < 0) {
+            return;
+        }
+
+        Circulation.Problem problem = circulation.checkout(bookId, memberNumber);
+        if (problem != null) {
+            JOptionPane.showMessageDialog(this, problem.getMessage());
+            return;
+        }
+        Loan loan = circulation.getLoan(bookId);
+        statusLabel.setText("Issued " + catalog.getTitle(bookId)
+            + (loan != null ? ", due " + loan.getDue() : ""));
+        isbnField.setText("");
+        showLoans();
+        warnIfNotSaved();
+    }
+
+    private void returnBook() {
+        int bookId = selectedBook();
+        if (bookId < 0) {
+            return;
+        }
+
+        Circulation.Problem problem = circulation.checkin(bookId);
+        if (problem != null) {
+            JOptionPane.showMessageDialog(this, problem.getMessage());
+            return;
+        }
+        int reservedFor = circulation.getReservedFor(bookId);
+        statusLabel.setText("Returned " + catalog.getTitle(bookId)
+            + (reservedFor >= 0 ? "; put it on the hold shelf for member #" + reservedFor : ""));
+        isbnField.setText("");
+        showLoans();
+        warnIfNotSaved();
+    }
+
+    private void renewBook() {
+        int bookId = selectedBook();
+        if (bookId < 0) {
+            return;
+        }
+
+        Circulation.Problem problem = circulation.renew(bookId);
+        if (problem != null) {
+            JOptionPane.showMessageDialog(this, problem.getMessage());
+            return;
+        }
+        statusLabel.setText("Renewed " + catalog.getTitle(bookId) + ", due " + circulation.getLoan(bookId).getDue());
+        showLoans();
+        warnIfNotSaved();
+    }
+
+    private void placeHold() {
+        int memberNumber = selectedMember();
+        if (memberNumber < 0) {
+            return;
+        }
+        int bookId = selectedBook();
+        if (bookId < 0) {
+            return;
+        }
+
+        Circulation.Problem problem = circulation.placeHold(bookId, memberNumber);
+        if (problem != null) {
+            JOptionPane.showMessageDialog(this, problem.getMessage());
+            return;
+        }
+        statusLabel.setText("Hold placed on " + catalog.getTitle(bookId) + ", position "
+            + (circulation.getHolds(bookId).indexOf(memberNumber) + 1));
+        warnIfNotSaved();
+    }
+
+    // Tells the user if the history never got what was just done; circulation
+    // refuses anything further from then on
+    private void warnIfNotSaved() {
+        circulation.whenSaved().whenComplete((saved, error) -> {
+            if (error != null) {
+                SwingUtilities.invokeLater(() -> {
+                    statusLabel.setText(Circulation.Problem.NOT_SAVED.getMessage());
+                    JOptionPane.showMessageDialog(this,
+                        "The borrowing history could not be saved: " + error.getMessage(),
+                        "Error",
+                        JOptionPane.ERROR_MESSAGE);
+                });
+            }
+        });
+    }
+
+    private void showLoans() {
+        tableModel.setRowCount(0);
+        String text = memberField.getText().trim();
+        if (text.isEmpty()) {
+            return;
+        }
+        int memberNumber = selectedMember();
+        if (memberNumber < 0) {
+            return;
+        }
+
+        LocalDate today = LocalDate.now();
+        for (Loan loan : circulation.getLoans(memberNumber)) {
+            Book book = catalog.get(loan.getBookId());
+            tableModel.addRow(new Object[]{
+                book != null ? book.getTitle() : "(removed)",
+                loan.getIsbn(),
+                loan.getIssued(),
+                loan.getDue(),
+                loan.isOverdue(today) ? "Overdue" : "On loan"
+            });
+        }
+    }
+
+    // Number of the member entered, or -1 after telling the user what is wrong
+    private int selectedMember() {
+        int memberNumber;
+        try {
+            memberNumber = Integer.parseInt(memberField.getText().trim());
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Please enter a member number!");
+            return -1;
+        }
+        if (circulation.getMember(memberNumber) == null) {
+            JOptionPane.showMessageDialog(this, Circulation.Problem.UNKNOWN_MEMBER.getMessage());
+            return -1;
+        }
+        return memberNumber;
+    }
+
+    // Id of the book with the ISBN entered, or -1 after telling the user what is wrong
+    private int selectedBook() {
+        String isbn = isbnField.getText().trim();
+        if (isbn.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Please enter an ISBN!");
+            return -1;
+        }
+        int bookId = catalog.findByIsbn(isbn);
+        if (bookId < 0) {
+            JOptionPane.showMessageDialog(this, "No book has this ISBN!");
+        }
+        return bookId;
+    }
+}
@@ -0,0 +1,351 @@
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+// Ids of every live book sorted by one table column, for sorting tables
+// without comparing strings on every repaint. Text sorts by a collation key,
+// so accents and case order the way readers expect: "García" next to
+// "Garcia", not after "Gz". Ties go to the lower id, which makes every
+// position unique. The first build computes every key once and sorts them;
+// afterwards books are placed one at a time by binary search. Text keys are
+// kept in an array beside the ids, so a search compares strings without
+// computing a key per step. Callers hold the catalog's write lock for
+// changes and its read lock for reads.
+public class ColumnOrder {
+    private final BookTableModel.Column column;
+    private final BookStore store;
+    private int[] ids;
+    private String[] keys; // Collation key of each id in ids; text columns only
+    private int size;
+    private int[] positions; // Position of each id in ids, or -1; rebuilt on demand
+    private boolean positionsStale = true;
+
+    public ColumnOrder(BookTableModel.Column column, BookStore store, int idBound) {
+        this.column = column;
+        this.store = store;
+        build(idBound);
+    }
+
+    private static final class Keyed {
+        final String key;
+        final int id;
+
+        Keyed(String key, int id) {
+            this.key = key;
+            this.id = id;
+        }
+    }
+
+    private void build(int idBound) {
+        int count = 0;
+        for (int id = 0; id < idBound; id++) {
+            if (store.contains(id)) {
+                count++;
+            }
+        }
+        ids = new int[Math.max(count, 16)];
+        size = 0;
+        if (isText()) {
+            Keyed[] keyed = new Keyed[count];
+            for (int id = 0; id < idBound; id++) {
+                if (store.contains(id)) {
+                    keyed[size++] = new Keyed(collationKey(text(id)), id);
+                }
+            }
+            Arrays.sort(keyed, Comparator.<Keyed, String>comparing(k -> k.key).thenComparingInt(k -> k.id));
+            keys = new String[ids.length];
+            for (int i = 0; i < size; i++) {
+                ids[i] = keyed[i].id;
+                keys[i] = keyed[i].key;
+            }
+        } else {
+            // Numbers pack into a long with the id below, so a primitive sort does it
+            long[] packed = new long[count];
+            for (int id = 0; id < idBound; id++) {
+                if (store.contains(id)) {
+                    packed[size++] = (long) number(id) << 32 | id;
+                }
+            }
+            Arrays.sort(packed);
+            for (int i = 0; i < size; i++) {
+                ids[i] = (int) packed[i];
+            }
+        }
+        positionsStale = true;
+    }
+
+    // Places a book already in the store
+    public void add(int id, Book book) {
+        Object key = key(book);
+        insert(id, key, search(id, key));
+    }
+
+    // Places the books with ids from first up to end, all just added to the
+    // store. A large batch is cheaper to sort in with everything else.
+    public void addRange(int first, int end) {
+        if ((long) (end - first) * 16 > size) {
+            build(end);
+            return;
+        }
+        int[] added = new int[end - first];
+        int count = 0;
+        for (int id = first; id < end; id++) {
+            if (store.contains(id)) {
+                added[count++] = id;
+            }
+        }
+        Object[] addedKeys = new Object[count];
+        int[] at = new int[count];
+        for (int i = 0; i < count; i++) {
+            addedKeys[i] = key(store.get(added[i]));
+            at[i] = search(added[i], addedKeys[i]);
+        }
+        // Merge in one pass; books landing on the same position keep their sorted order
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> at[a] != at[b] ? Integer.compare(at[a], at[b])
+            : compareKeys(addedKeys[a], added[a], addedKeys[b], added[b]));
+        int[] merged = new int[Math.max(size + count, 16)];
+        String[] mergedKeys = keys == null ? null : new String[merged.length];
+        int from = 0;
+        int to = 0;
+        for (Integer index : order) {
+            int position = at[index];
+            copyRun(merged, mergedKeys, from, to, position - from);
+            to += position - from;
+            from = position;
+            if (mergedKeys != null) {
+                mergedKeys[to] = (String) addedKeys[index];
+            }
+            merged[to++] = added[index];
+        }
+        copyRun(merged, mergedKeys, from, to, size - from);
+        ids = merged;
+        keys = mergedKeys;
+        size += count;
+        positionsStale = true;
+    }
+
+    // Takes out a book; oldBook is the book as it was when it was placed
+    public void remove(int id, Book oldBook) {
+        int position = search(id, key(oldBook));
+        if (position < size && ids[position] == id) {
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            if (keys != null) {
+                System.arraycopy(keys, position + 1, keys, position, size - position - 1);
+                keys[size - 1] = null;
+            }
+            size--;
+            positionsStale = true;
+        }
+    }
+
+    public void update(int id, Book oldBook, Book book) {
+        if (!sameKey(oldBook, book)) {
+            remove(id, oldBook);
+            add(id, book);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Id at this position in the order, or -1 past the end
+    public int idAt(int position) {
+        return position >= 0 && position < size ? ids[position] : -1;
+    }
+
+    // The first count entries of subset in this order, as a new array. Ids
+    // that are no longer in the catalog go last.
+    public int[] sort(int[] subset, int count) {
+        if (positionsStale) {
+            int bound = 0;
+            for (int i = 0; i < size; i++) {
+                bound = Math.max(bound, ids[i] + 1);
+            }
+            if (positions == null || positions.length < bound) {
+                positions = new int[Math.max(bound, 16)];
+            }
+            Arrays.fill(positions, -1);
+            for (int i = 0; i < size; i++) {
+                positions[ids[i]] = i;
+            }
+            positionsStale = false;
+        }
+        long[] packed = new long[count];
+        for (int i = 0; i < count; i++) {
+            int id = subset[i];
+            int position = id < positions.length ? positions[id] : -1;
+            packed[i] = (long) (position < 0 ? Integer.MAX_VALUE : position) << 32 | id;
+        }
+        Arrays.sort(packed);
+        int[] sorted = new int[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = (int) packed[i];
+        }
+        return sorted;
+    }
+
+    private void insert(int id, Object key, int position) {
+        if (position < size && ids[position] == id) {
+            return; // Already placed
+        }
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            if (keys != null) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+        }
+        System.arraycopy(ids, position, ids, position + 1, size - position);
+        ids[position] = id;
+        if (keys != null) {
+            System.arraycopy(keys, position, keys, position + 1, size - position);
+            keys[position] = (String) key;
+        }
+        size++;
+        positionsStale = true;
+    }
+
+    // Copies length ids and their keys from position from into merged at to
+    private void copyRun(int[] merged, String[] mergedKeys, int from, int to, int length) {
+        System.arraycopy(ids, from, merged, to, length);
+        if (mergedKeys != null) {
+            System.arraycopy(keys, from, mergedKeys, to, length);
+        }
+    }
+
+    // Position of the book with this key in the order, or where it would go.
+    // The book is compared by the key given, so its own stored value may
+    // already differ.
+    private int search(int id, Object key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int other = ids[middle];
+            if (other == id) {
+                return middle;
+            }
+            if (compare(id, key, middle) > 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // The collation key of a text column or the number of the others
+    private Object key(Book book) {
+        return isText() ? collationKey(text(book)) : (Object) number(book);
+    }
+
+    // Compares the book with this key, stored under id, against the book at position
+    private int compare(int id, Object key, int position) {
+        int other = ids[position];
+        int result;
+        if (isText()) {
+            result = ((String) key).compareTo(keys[position]);
+        } else {
+            result = Integer.compare((Integer) key, number(other));
+        }
+        return result != 0 ? result : Integer.compare(id, other);
+    }
+
+    private int compareKeys(Object key, int id, Object otherKey, int other) {
+        int result = isText() ? ((String) key).compareTo((String) otherKey)
+            : Integer.compare((Integer) key, (Integer) otherKey);
+        return result != 0 ? result : Integer.compare(id, other);
+    }
+
+    // Base letters of the Latin-1 letters from U+00C0 on, which cover most
+    // accented text without running the Unicode normalizer
+    private static final String[] LATIN1_BASE = (
+        "a a a a a a ae c e e e e i i i i d n o o o o o \u00d7 o u u u u y th ss "
+        + "a a a a a a ae c e e e e i i i i d n o o o o o \u00f7 o u u u u y th y").split(" ");
+
+    // A key whose plain String order sorts text in three levels, as a collator
+    // does: the letters without accents or case, then the accents, then the
+    // exact text. java.text.Collator keys took microseconds each, which made
+    // the first sort of a million titles take many seconds.
+    static String collationKey(String text) {
+        StringBuilder key = new StringBuilder(text.length() * 3 + 2);
+        boolean ascii = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                key.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+            } else {
+                ascii = false;
+                appendBaseLetters(key, c);
+            }
+        }
+        key.append('\u0000');
+        if (!ascii) {
+            key.append(text.toLowerCase(Locale.ROOT));
+        }
+        key.append('\u0000').append(text);
+        return key.toString();
+    }
+
+    private static void appendBaseLetters(StringBuilder key, char c) {
+        if (c >= 0xC0 && c <= 0xFF) {
+            key.append(LATIN1_BASE[c - 0xC0]);
+            return;
+        }
+        String decomposed = c < 0x100 ? String.valueOf(c) : Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+        for (int i = 0; i < decomposed.length(); i++) {
+            char part = Character.toLowerCase(decomposed.charAt(i));
+            if (Character.getType(part) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            switch (part) {
+                case '\u0153': key.append("oe"); break; // œ
+                case '\u0142': key.append('l'); break; // ł
+                case '\u0111': key.append('d'); break; // đ
+                default: key.append(part); break;
+            }
+        }
+    }
+
+    private boolean sameKey(Book a, Book b) {
+        return isText() ? text(a).equals(text(b)) : number(a) == number(b);
+    }
+
+    private boolean isText() {
+        return column != BookTableModel.Column.YEAR && column != BookTableModel.Column.AVAILABLE;
+    }
+
+    private String text(int id) {
+        switch (column) {
+            case TITLE: return store.getTitle(id);
+            case AUTHOR: return store.getAuthor(id);
+            case ISBN: return store.getIsbn(id);
+            case CATEGORY: return store.getCategory(id);
+            default: return store.getDescription(id);
+        }
+    }
+
+    private String text(Book book) {
+        switch (column) {
+            case TITLE: return book.getTitle();
+            case AUTHOR: return book.getAuthor();
+            case ISBN: return book.getIsbn();
+            case CATEGORY: return book.getCategory();
+            default: return book.getDescription();
+        }
+    }
+
+    // "No" sorts before "Yes", as it would alphabetically
+    private int number(int id) {
+        return column == BookTableModel.Column.YEAR ? store.getYear(id) : store.isAvailable(id) ? 1 : 0;
+    }
+
+    private int number(Book book) {
+        return column == BookTableModel.Column.YEAR ? book.getYear() : book.isAvailable() ? 1 : 0;
+    }
+}
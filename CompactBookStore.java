@@ -0,0 +1,109 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Memory-optimized store that keeps each field in its own column instead of
+// one Book object per title. Authors and categories repeat heavily, so they
+// are stored as codes into shared dictionaries, and year and availability are
+// packed into one int per book. get() materializes a Book as a view; the
+// per-field getters read the columns directly.
+public class CompactBookStore implements BookStore {
+    private final StringDictionary authors;
+    private final StringDictionary categories;
+    private final BitSet live = new BitSet();
+    private String[] titles = new String[1024];
+    private String[] isbns = new String[1024];
+    private String[] descriptions = new String[1024];
+    private int[] authorCodes = new int[1024];
+    private char[] categoryCodes = new char[1024];
+    private int[] yearAndAvailability = new int[1024];
+
+    public CompactBookStore() {
+        this(new StringDictionary(), new StringDictionary());
+    }
+
+    public CompactBookStore(StringDictionary authors, StringDictionary categories) {
+        this.authors = authors;
+        this.categories = categories;
+    }
+
+    @Override
+    public void put(int id, Book book) {
+        ensureCapacity(id);
+        int category = categories.encode(book.getCategory());
+        if (category > Character.MAX_VALUE) {
+            throw new IllegalStateException("Too many categories for the compact store");
+        }
+        titles[id] = book.getTitle();
+        isbns[id] = book.getIsbn();
+        descriptions[id] = book.getDescription();
+        authorCodes[id] = authors.encode(book.getAuthor());
+        categoryCodes[id] = (char) category;
+        yearAndAvailability[id] = pack(book.getYear(), book.isAvailable());
+        live.set(id);
+    }
+
+    @Override
+    public void remove(int id) {
+        live.clear(id);
+        titles[id] = null;
+        isbns[id] = null;
+        descriptions[id] = null;
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return id >= 0 && live.get(id);
+    }
+
+    @Override
+    public Book get(int id) {
+        if (!contains(id)) {
+            return null;
+        }
+        return new Book(getTitle(id), getAuthor(id), getIsbn(id), getCategory(id), getDescription(id),
+            getYear(id), isAvailable(id));
+    }
+
+    @Override
+    public String getTitle(int id) { return titles[id]; }
+
+    @Override
+    public String getAuthor(int id) { return authors.decode(authorCodes[id]); }
+
+    @Override
+    public String getIsbn(int id) { return isbns[id]; }
+
+    @Override
+    public String getCategory(int id) { return categories.decode(categoryCodes[id]); }
+
+    @Override
+    public String getDescription(int id) { return descriptions[id]; }
+
+    @Override
+    public int getYear(int id) { return yearAndAvailability[id] >> 1; }
+
+    @Override
+    public boolean isAvailable(int id) { return (yearAndAvailability[id] & 1) != 0; }
+
+    @Override
+    public void setAvailable(int id, boolean available) {
+        yearAndAvailability[id] = pack(getYear(id), available);
+    }
+
+    private static int pack(int year, boolean available) {
+        return (year << 1) | (available ? 1 : 0);
+    }
+
+    private void ensureCapacity(int id) {
+        if (id < titles.length) {
+            return;
+        }
+        int capacity = Math.max(titles.length * 2, id + 1);
+        titles = Arrays.copyOf(titles, capacity);
+        isbns = Arrays.copyOf(isbns, capacity);
+        descriptions = Arrays.copyOf(descriptions, capacity);
+        authorCodes = Arrays.copyOf(authorCodes, capacity);
+        categoryCodes = Arrays.copyOf(categoryCodes, capacity);
+        yearAndAvailability = Arrays.copyOf(yearAndAvailability, capacity);
+    }
+}
@@ -0,0 +1,273 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+// Streams books out of a CSV file laid out like the book table:
+// Title, Author, ISBN, Category, Year, Available, Description.
+// The file is memory-mapped in fixed windows and parsed byte by byte, so only
+// the final field strings are allocated and files larger than 2 GB work too.
+public class CsvBookReader implements Closeable {
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final int END_OF_FILE = -1;
+    private static final int MAX_CACHED_CATEGORIES = 64;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    private byte[] field = new byte[256];
+    private int fieldLength;
+    private boolean firstRow = true;
+    private boolean endOfFile;
+    private int skippedRows;
+
+    // Categories repeat on almost every row, so reuse one String per distinct value
+    private final byte[][] categoryBytes = new byte[MAX_CACHED_CATEGORIES][];
+    private final String[] categoryStrings = new String[MAX_CACHED_CATEGORIES];
+    private int categoryCount;
+
+    public CsvBookReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        fileSize = channel.size();
+        skipByteOrderMark();
+    }
+
+    // Returns the next well-formed book, or null once the file is exhausted
+    public Book next() throws IOException {
+        while (!endOfFile) {
+            Book book = readRow();
+            if (book != null) {
+                return book;
+            }
+        }
+        return null;
+    }
+
+    // Reads the rest of the file, handing books to consumer in batches of
+    // batchSize. After each batch, progress is given the percentage read and
+    // stops the import by returning false. Returns the number of books handed over.
+    public int readInBatches(int batchSize, Consumer<List<Book>> consumer, IntPredicate progress)
+            throws IOException {
+        int read = 0;
+        List<Book> batch = new ArrayList<>(batchSize);
+        Book book;
+        while ((book = next()) != null) {
+            batch.add(book);
+            if (batch.size() == batchSize) {
+                consumer.accept(batch);
+                read += batch.size();
+                batch = new ArrayList<>(batchSize);
+                if (!progress.test(getProgress())) {
+                    return read;
+                }
+            }
+        }
+        if (!batch.isEmpty() && progress.test(getProgress())) {
+            consumer.accept(batch);
+            read += batch.size();
+        }
+        return read;
+    }
+
+    public long getPosition() {
+        return window == null ? 0 : windowStart + window.position();
+    }
+
+    public long getSize() {
+        return fileSize;
+    }
+
+    public int getProgress() {
+        return fileSize == 0 ? 100 : (int) (getPosition() * 100 / fileSize);
+    }
+
+    public int getSkippedRows() {
+        return skippedRows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private Book readRow() throws IOException {
+        String title = null, author = null, isbn = null, category = null, description = "";
+        int year = 0;
+        boolean available = true;
+        boolean valid = true;
+        int column = 0;
+        int end;
+
+        do {
+            end = readField();
+            switch (column) {
+                case 0: title = decodeField(); break;
+                case 1: author = decodeField(); break;
+                case 2: isbn = decodeField(); break;
+                case 3: category = categoryField(); break;
+                case 4:
+                    year = parseYear();
+                    valid = year >= 0;
+                    break;
+                case 5: available = parseAvailable(); break;
+                case 6: description = decodeField(); break;
+                default: break; // Extra columns are ignored
+            }
+            column++;
+        } while (end == ',');
+
+        if (end == END_OF_FILE) {
+            endOfFile = true;
+        }
+        if (column == 1 && title.isEmpty()) {
+            return null; // Blank line
+        }
+        if (firstRow) {
+            firstRow = false;
+            if (title.equalsIgnoreCase("Title")) {
+                return null; // Header row
+            }
+        }
+        if (column < 6 || !valid) {
+            skippedRows++;
+            return null;
+        }
+        return new Book(title, author, isbn, category, description, year, available);
+    }
+
+    // Reads one field into the reusable buffer and returns the byte that ended it
+    private int readField() throws IOException {
+        fieldLength = 0;
+        int b = readByte();
+        if (b == '"') {
+            while (true) {
+                b = readByte();
+                if (b == END_OF_FILE) {
+                    return b;
+                }
+                if (b == '"') {
+                    b = readByte();
+                    if (b != '"') {
+                        break; // Closing quote
+                    }
+                }
+                append(b);
+            }
+        }
+        while (b != ',' && b != '\n' && b != END_OF_FILE) {
+            if (b != '\r') {
+                append(b);
+            }
+            b = readByte();
+        }
+        return b;
+    }
+
+    private int readByte() throws IOException {
+        if (window == null || !window.hasRemaining()) {
+            if (!nextWindow()) {
+                return END_OF_FILE;
+            }
+        }
+        return window.get() & 0xFF;
+    }
+
+    private boolean nextWindow() throws IOException {
+        long start = window == null ? 0 : windowStart + window.capacity();
+        if (start >= fileSize) {
+            return false;
+        }
+        long length = Math.min(WINDOW_SIZE, fileSize - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        windowStart = start;
+        return true;
+    }
+
+    private void skipByteOrderMark() throws IOException {
+        if (fileSize >= 3 && nextWindow()) {
+            if ((window.get(0) & 0xFF) == 0xEF && (window.get(1) & 0xFF) == 0xBB && (window.get(2) & 0xFF) == 0xBF) {
+                window.position(3);
+            }
+        }
+    }
+
+    private void append(int b) {
+        if (fieldLength == field.length) {
+            byte[] larger = new byte[field.length * 2];
+            System.arraycopy(field, 0, larger, 0, fieldLength);
+            field = larger;
+        }
+        field[fieldLength++] = (byte) b;
+    }
+
+    private String decodeField() {
+        return fieldLength == 0 ? "" : new String(field, 0, fieldLength, StandardCharsets.UTF_8);
+    }
+
+    private String categoryField() {
+        for (int i = 0; i < categoryCount; i++) {
+            if (fieldEquals(categoryBytes[i])) {
+                return categoryStrings[i];
+            }
+        }
+        String category = decodeField();
+        if (categoryCount < MAX_CACHED_CATEGORIES) {
+            byte[] bytes = new byte[fieldLength];
+            System.arraycopy(field, 0, bytes, 0, fieldLength);
+            categoryBytes[categoryCount] = bytes;
+            categoryStrings[categoryCount] = category;
+            categoryCount++;
+        }
+        return category;
+    }
+
+    private boolean fieldEquals(byte[] bytes) {
+        if (bytes.length != fieldLength) {
+            return false;
+        }
+        for (int i = 0; i < fieldLength; i++) {
+            if (bytes[i] != field[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns -1 when the field is not a plain non-negative number
+    private int parseYear() {
+        int year = 0;
+        int digits = 0;
+        for (int i = 0; i < fieldLength; i++) {
+            byte b = field[i];
+            if (b >= '0' && b <= '9') {
+                if (++digits > 9) {
+                    return -1;
+                }
+                year = year * 10 + (b - '0');
+            } else if (b != ' ') {
+                return -1;
+            }
+        }
+        return digits == 0 ? -1 : year;
+    }
+
+    private boolean parseAvailable() {
+        for (int i = 0; i < fieldLength; i++) {
+            byte b = field[i];
+            if (b != ' ') {
+                return b == 'Y' || b == 'y' || b == 'T' || b == 't' || b == '1';
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,185 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntPredicate;
+
+// Writes books as CSV in the same column layout CsvBookReader expects.
+// Characters are encoded straight into one reusable buffer that is drained
+// to the channel whenever it fills, so memory use stays constant.
+public class CsvBookWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final String HEADER = "Title,Author,ISBN,Category,Year,Available,Description";
+
+    // Ids read from the catalog per lock hold
+    private static final int CHUNK = 4096;
+
+    private final FileChannel channel;
+    private final byte[] bytes = new byte[BUFFER_SIZE];
+    private final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    private int position;
+    private long bytesWritten;
+
+    public CsvBookWriter(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    // Writes the catalog's books to a file next to target and moves it into
+    // place only once it is complete, so readers of the export never see a
+    // half-written file. Books are read field by field a chunk of ids at a
+    // time, so no Book objects are built whatever the store and memory stays
+    // flat; books added after the export starts are left out. After every
+    // chunk progress is given the percentage written and cancels the export by
+    // returning false. Returns the number of books written.
+    public static int export(Catalog catalog, Path target, IntPredicate progress) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        int idBound = catalog.getIdBound();
+        int written = 0;
+        try {
+            try (CsvBookWriter writer = new CsvBookWriter(temp)) {
+                writer.writeHeader();
+                for (int first = 0; first < idBound; first += CHUNK) {
+                    int end = Math.min(first + CHUNK, idBound);
+                    written += catalog.writeBooks(first, end, writer);
+                    if (!progress.test((int) ((long) end * 100 / idBound))) {
+                        return written;
+                    }
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return written;
+    }
+
+    public void writeHeader() throws IOException {
+        writeRaw(HEADER);
+        putByte('\n');
+    }
+
+    // Writes the book stored under id; see Catalog.writeBooks
+    public void write(BookStore store, int id) throws IOException {
+        writeField(store.getTitle(id));
+        putByte(',');
+        writeField(store.getAuthor(id));
+        putByte(',');
+        writeField(store.getIsbn(id));
+        putByte(',');
+        writeField(store.getCategory(id));
+        putByte(',');
+        writeInt(store.getYear(id));
+        putByte(',');
+        writeRaw(store.isAvailable(id) ? "Yes" : "No");
+        putByte(',');
+        writeField(store.getDescription(id));
+        putByte('\n');
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten + position;
+    }
+
+    public void flush() throws IOException {
+        buffer.clear().limit(position);
+        while (buffer.hasRemaining()) {
+            bytesWritten += channel.write(buffer);
+        }
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeField(String value) throws IOException {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        if (!needsQuotes(value)) {
+            writeRaw(value);
+            return;
+        }
+        putByte('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                putByte('"');
+            }
+            i = putChar(value, i);
+        }
+        putByte('"');
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeRaw(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            i = putChar(value, i);
+        }
+    }
+
+    private void writeInt(int value) throws IOException {
+        if (value < 0) {
+            putByte('-');
+            value = -value;
+        }
+        int divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            putByte('0' + (value / divisor) % 10);
+        }
+    }
+
+    // Encodes the character at index as UTF-8 and returns the index of the last char consumed
+    private int putChar(String value, int index) throws IOException {
+        char c = value.charAt(index);
+        if (c < 0x80) {
+            putByte(c);
+        } else if (c < 0x800) {
+            putByte(0xC0 | (c >> 6));
+            putByte(0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && index + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(++index));
+            putByte(0xF0 | (codePoint >> 18));
+            putByte(0x80 | ((codePoint >> 12) & 0x3F));
+            putByte(0x80 | ((codePoint >> 6) & 0x3F));
+            putByte(0x80 | (codePoint & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            putByte('?');
+        } else {
+            putByte(0xE0 | (c >> 12));
+            putByte(0x80 | ((c >> 6) & 0x3F));
+            putByte(0x80 | (c & 0x3F));
+        }
+        return index;
+    }
+
+    private void putByte(int b) throws IOException {
+        if (position == BUFFER_SIZE) {
+            flush();
+        }
+        bytes[position++] = (byte) b;
+    }
+}
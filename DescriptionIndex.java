@@ -0,0 +1,366 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+// Full-text index over descriptions, ranked with BM25. Every word maps to the
+// ids of the descriptions using it, in id order, with how often each uses it;
+// the index also keeps every description's length in words. A search walks the
+// posting lists of its words together, scores each book it meets and keeps the
+// best few in a bounded heap, so it never sorts every match.
+public class DescriptionIndex {
+    // The usual BM25 constants: how fast repeating a word stops helping, and
+    // how much a long description is held against its matches
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final Map<String, Postings> terms = new HashMap<>();
+    private int[] lengths = new int[1024]; // Words per description, by id
+    private int documents;
+    private long totalLength;
+
+    // A word's posting list: the ids using it in id order, each with how often.
+    // Edits work like IdList's: a removed id stays in place as a tombstone, its
+    // bits inverted, an old id added back out of order waits in a short sorted
+    // side list, and both are merged in one pass once there are enough of them.
+    private static final class Postings {
+        int[] ids = new int[2]; // ~id marks a removed id
+        short[] counts = new short[2];
+        int stored;
+        int removed;
+        int[] pendingIds = new int[0];
+        short[] pendingCounts = new short[0];
+        int pendingSize;
+
+        void add(int id, int count) {
+            short clamped = (short) Math.min(count, Short.MAX_VALUE);
+            if (stored == 0 || id > idAt(stored - 1)) {
+                if (pendingSize > 0 && pendingIds[pendingSize - 1] >= id) {
+                    addPending(id, clamped); // An append would go ahead of a pending id
+                    return;
+                }
+                if (stored == ids.length) {
+                    ids = Arrays.copyOf(ids, stored * 2);
+                    counts = Arrays.copyOf(counts, stored * 2);
+                }
+                ids[stored] = id;
+                counts[stored] = clamped;
+                stored++;
+                return;
+            }
+            int index = search(id);
+            if (index >= 0) {
+                if (ids[index] < 0) {
+                    ids[index] = id;
+                    removed--;
+                }
+                counts[index] = clamped;
+                return;
+            }
+            addPending(id, clamped);
+        }
+
+        void remove(int id) {
+            int index = search(id);
+            if (index >= 0) {
+                if (ids[index] >= 0) {
+                    ids[index] = ~id;
+                    removed++;
+                    if (removed > Math.max(16, stored / 8)) {
+                        compact();
+                    }
+                }
+                return;
+            }
+            index = Arrays.binarySearch(pendingIds, 0, pendingSize, id);
+            if (index >= 0) {
+                System.arraycopy(pendingIds, index + 1, pendingIds, index, pendingSize - index - 1);
+                System.arraycopy(pendingCounts, index + 1, pendingCounts, index, pendingSize - index - 1);
+                pendingSize--;
+            }
+        }
+
+        int size() {
+            return stored - removed + pendingSize;
+        }
+
+        private void addPending(int id, short count) {
+            int index = Arrays.binarySearch(pendingIds, 0, pendingSize, id);
+            if (index >= 0) {
+                pendingCounts[index] = count;
+                return;
+            }
+            index = -index - 1;
+            if (pendingSize == pendingIds.length) {
+                pendingIds = Arrays.copyOf(pendingIds, Math.max(8, pendingSize * 2));
+                pendingCounts = Arrays.copyOf(pendingCounts, pendingIds.length);
+            }
+            System.arraycopy(pendingIds, index, pendingIds, index + 1, pendingSize - index);
+            System.arraycopy(pendingCounts, index, pendingCounts, index + 1, pendingSize - index);
+            pendingIds[index] = id;
+            pendingCounts[index] = count;
+            pendingSize++;
+            if ((long) pendingSize * pendingSize > Math.max(256, stored)) {
+                compact();
+            }
+        }
+
+        // Merges the side list in and drops the tombstones
+        private void compact() {
+            int live = size();
+            int[] mergedIds = new int[Math.max(2, live + live / 4)];
+            short[] mergedCounts = new short[mergedIds.length];
+            Cursor cursor = new Cursor(this);
+            for (int i = 0; i < live; i++) {
+                mergedIds[i] = cursor.id;
+                mergedCounts[i] = cursor.count;
+                cursor.advance();
+            }
+            ids = mergedIds;
+            counts = mergedCounts;
+            stored = live;
+            removed = 0;
+            pendingSize = 0;
+            if (pendingIds.length > 64) {
+                pendingIds = new int[0];
+                pendingCounts = new short[0];
+            }
+        }
+
+        private int idAt(int index) {
+            int id = ids[index];
+            return id < 0 ? ~id : id;
+        }
+
+        // Binary search of the stored ids, tombstones included
+        private int search(int id) {
+            int low = 0;
+            int high = stored - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int value = idAt(middle);
+                if (value < id) {
+                    low = middle + 1;
+                } else if (value > id) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+
+    // Walks a posting list's live ids in order, the side list merged in;
+    // id is Integer.MAX_VALUE once the list is used up
+    private static final class Cursor {
+        private final Postings postings;
+        private int stored;
+        private int pending;
+        int id;
+        short count;
+
+        Cursor(Postings postings) {
+            this.postings = postings;
+            advance();
+        }
+
+        void advance() {
+            while (stored < postings.stored && postings.ids[stored] < 0) {
+                stored++;
+            }
+            int storedId = stored < postings.stored ? postings.ids[stored] : Integer.MAX_VALUE;
+            int pendingId = pending < postings.pendingSize ? postings.pendingIds[pending] : Integer.MAX_VALUE;
+            if (storedId == Integer.MAX_VALUE && pendingId == Integer.MAX_VALUE) {
+                id = Integer.MAX_VALUE;
+                count = 0;
+            } else if (storedId < pendingId) {
+                id = storedId;
+                count = postings.counts[stored++];
+            } else {
+                id = pendingId;
+                count = postings.pendingCounts[pending++];
+            }
+        }
+    }
+
+    public void add(int id, String description) {
+        String[] words = FuzzyIndex.words(NGramIndex.fold(description));
+        Map<String, Integer> counts = countWords(words);
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            Postings postings = terms.get(entry.getKey());
+            if (postings == null) {
+                postings = new Postings();
+                terms.put(entry.getKey(), postings);
+            }
+            postings.add(id, entry.getValue());
+        }
+        if (id >= lengths.length) {
+            lengths = Arrays.copyOf(lengths, Math.max(id + 1, lengths.length * 2));
+        }
+        lengths[id] = words.length;
+        documents++;
+        totalLength += words.length;
+    }
+
+    public void remove(int id, String description) {
+        String[] words = FuzzyIndex.words(NGramIndex.fold(description));
+        for (String word : countWords(words).keySet()) {
+            Postings postings = terms.get(word);
+            if (postings != null) {
+                postings.remove(id);
+                if (postings.size() == 0) {
+                    terms.remove(word);
+                }
+            }
+        }
+        lengths[id] = 0;
+        documents--;
+        totalLength -= words.length;
+    }
+
+    // Ids of the best scoring descriptions for the query that pass the filter,
+    // at most limit of them, best first
+    public int[] search(String foldedQuery, int limit, IntPredicate filter) {
+        Set<String> queryWords = new LinkedHashSet<>(Arrays.asList(FuzzyIndex.words(foldedQuery)));
+        Cursor[] lists = new Cursor[queryWords.size()];
+        double[] weights = new double[lists.length];
+        int count = 0;
+        for (String word : queryWords) {
+            Postings postings = terms.get(word);
+            if (postings != null) {
+                lists[count] = new Cursor(postings);
+                weights[count] = idf(postings.size(), documents);
+                count++;
+            }
+        }
+        TopScores top = new TopScores(Math.min(limit, documents));
+        if (count == 0 || limit <= 0) {
+            return top.ids();
+        }
+
+        // Walk the lists side by side, one book at a time in id order
+        double averageLength = (double) totalLength / documents;
+        while (true) {
+            int id = Integer.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                id = Math.min(id, lists[i].id);
+            }
+            if (id == Integer.MAX_VALUE) {
+                break;
+            }
+            double score = 0;
+            for (int i = 0; i < count; i++) {
+                if (lists[i].id == id) {
+                    score += weights[i] * termScore(lists[i].count, lengths[id], averageLength);
+                    lists[i].advance();
+                }
+            }
+            // The filter reads the store, so only books that would make the cut get checked
+            if (top.accepts(score, id) && filter.test(id)) {
+                top.add(score, id);
+            }
+        }
+        return top.ids();
+    }
+
+    public static double idf(int withWord, int documents) {
+        return Math.log(1 + (documents - withWord + 0.5) / (withWord + 0.5));
+    }
+
+    public static double termScore(int count, int length, double averageLength) {
+        return count * (K1 + 1) / (count + K1 * (1 - B + B * length / averageLength));
+    }
+
+    public static Map<String, Integer> countWords(String[] words) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String word : words) {
+            counts.merge(word, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    // The best limit scores seen so far in a min-heap, so the weakest one is
+    // the one to compare against and to drop. Ties go to the lower id.
+    public static final class TopScores {
+        private final double[] scores;
+        private final int[] ids;
+        private int size;
+
+        public TopScores(int limit) {
+            scores = new double[Math.max(limit, 0)];
+            ids = new int[scores.length];
+        }
+
+        public boolean accepts(double score, int id) {
+            return size < scores.length || (scores.length > 0 && better(score, id, scores[0], ids[0]));
+        }
+
+        public void add(double score, int id) {
+            int index;
+            if (size < scores.length) {
+                index = size++;
+                while (index > 0 && better(scores[(index - 1) / 2], ids[(index - 1) / 2], score, id)) {
+                    scores[index] = scores[(index - 1) / 2];
+                    ids[index] = ids[(index - 1) / 2];
+                    index = (index - 1) / 2;
+                }
+            } else {
+                index = 0;
+                while (true) {
+                    int child = index * 2 + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && better(scores[child], ids[child], scores[child + 1], ids[child + 1])) {
+                        child++;
+                    }
+                    if (!better(score, id, scores[child], ids[child])) {
+                        break;
+                    }
+                    scores[index] = scores[child];
+                    ids[index] = ids[child];
+                    index = child;
+                }
+            }
+            scores[index] = score;
+            ids[index] = id;
+        }
+
+        // Ids best first; empties the heap
+        public int[] ids() {
+            int[] result = new int[size];
+            for (int i = size - 1; i >= 0; i--) {
+                result[i] = ids[0];
+                size--;
+                double lastScore = scores[size];
+                int lastId = ids[size];
+                int index = 0;
+                while (true) {
+                    int child = index * 2 + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && better(scores[child], ids[child], scores[child + 1], ids[child + 1])) {
+                        child++;
+                    }
+                    if (!better(lastScore, lastId, scores[child], ids[child])) {
+                        break;
+                    }
+                    scores[index] = scores[child];
+                    ids[index] = ids[child];
+                    index = child;
+                }
+                scores[index] = lastScore;
+                ids[index] = lastId;
+            }
+            return result;
+        }
+
+        private static boolean better(double score, int id, double otherScore, int otherId) {
+            return score > otherScore || (score == otherScore && id < otherId);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.event.InvocationEvent;
+import java.io.PrintStream;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Finds what freezes the window. Pushed onto the system event queue, it
+// times the dispatch of every event on the Event Dispatch Thread into a
+// histogram. A daemon thread looks at the running event every quarter of the
+// threshold; once one has run past the threshold it takes the EDT's stack,
+// and again every time the stall doubles, so the stack shows where the time
+// goes rather than where the event started. A stall is logged with its
+// duration and last stack when the event finishes, or right away when it
+// passes FREEZE_NANOS, in case it never does. Stalls are grouped by their
+// handler, the outermost application frame of the stack, into a summary of
+// the worst offenders, logged every SUMMARY_EVERY stalls and at exit.
+// A modal dialog pumps events inside the event that opened it, so while the
+// queue waits for the next event nothing counts as running, and the outer
+// event's clock restarts when a nested one finishes.
+public class EdtWatchdog extends EventQueue {
+    private static final long FREEZE_NANOS = 5_000_000_000L;
+    private static final int SUMMARY_EVERY = 10;
+    private static final int MAX_OFFENDERS = 100;
+    private static final int MAX_DEPTH = 32;
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+    private final long thresholdNanos;
+    private final PrintStream log;
+    private final LatencyHistogram dispatchTimes = new LatencyHistogram();
+
+    // Only touched on the EDT
+    private final long[] starts = new long[MAX_DEPTH];
+    private int depth;
+
+    // Published by the EDT for the sampler
+    private volatile Thread edt;
+    private volatile long runningSince; // 0 while no event runs
+    private volatile long runningSequence;
+    private long sequence;
+
+    // The sampler's latest stack of the running event, guarded by this
+    private long sampledSequence = -1;
+    private StackTraceElement[] sampledStack;
+
+    private final Map<String, Offender> offenders = new HashMap<>(); // guarded by this
+    private int stalls; // guarded by this
+
+    private static final class Offender {
+        final String frame;
+        int count;
+        long total;
+        long worst;
+
+        Offender(String frame) {
+            this.frame = frame;
+        }
+    }
+
+    private EdtWatchdog(long thresholdMillis, PrintStream log) {
+        this.thresholdNanos = thresholdMillis * 1_000_000;
+        this.log = log;
+    }
+
+    // Starts timing events on the EDT; events running longer than
+    // thresholdMillis are logged. Returns the watchdog, or null when the
+    // threshold is not positive.
+    public static EdtWatchdog install(long thresholdMillis, PrintStream log) {
+        if (thresholdMillis <= 0) {
+            return null;
+        }
+        EdtWatchdog watchdog = new EdtWatchdog(thresholdMillis, log);
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(watchdog);
+        Thread sampler = new Thread(watchdog::sample, "edt-watchdog");
+        sampler.setDaemon(true);
+        sampler.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(watchdog::logSummaryAtExit, "edt-watchdog-summary"));
+        return watchdog;
+    }
+
+    // How long events took to dispatch, stalls or not
+    public LatencyHistogram getDispatchTimes() {
+        return dispatchTimes;
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        int level = depth;
+        if (level == MAX_DEPTH) {
+            super.dispatchEvent(event);
+            return;
+        }
+        if (edt != Thread.currentThread()) {
+            edt = Thread.currentThread();
+        }
+        depth++;
+        run(level, System.nanoTime());
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            long end = System.nanoTime();
+            long duration = end - starts[level];
+            long stalledSequence = runningSequence;
+            depth--;
+            if (level > 0) {
+                run(level - 1, end);
+            } else {
+                runningSince = 0;
+            }
+            dispatchTimes.record(duration);
+            if (duration > thresholdNanos) {
+                stalled(event, duration, stalledSequence);
+            }
+        }
+    }
+
+    // A nested loop waiting for the next event is not the enclosing event running
+    @Override
+    public AWTEvent getNextEvent() throws InterruptedException {
+        if (depth == 0 || Thread.currentThread() != edt) {
+            return super.getNextEvent();
+        }
+        runningSince = 0;
+        try {
+            return super.getNextEvent();
+        } finally {
+            run(depth - 1, System.nanoTime());
+        }
+    }
+
+    private void run(int level, long start) {
+        starts[level] = start;
+        runningSequence = ++sequence;
+        runningSince = start;
+    }
+
+    private void sample() {
+        long pollMillis = Math.max(1, thresholdNanos / 4_000_000);
+        long watchedSequence = -1;
+        long nextSample = 0;
+        boolean freezeLogged = false;
+        while (true) {
+            try {
+                Thread.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long since = runningSince;
+            long running = runningSequence;
+            Thread thread = edt;
+            if (since == 0 || thread == null) {
+                continue;
+            }
+            if (running != watchedSequence) {
+                watchedSequence = running;
+                nextSample = thresholdNanos;
+                freezeLogged = false;
+            }
+            long elapsed = System.nanoTime() - since;
+            if (elapsed < nextSample && (freezeLogged || elapsed < FREEZE_NANOS)) {
+                continue;
+            }
+            StackTraceElement[] stack = thread.getStackTrace();
+            if (runningSequence != running) {
+                continue; // The event finished while the stack was taken
+            }
+            synchronized (this) {
+                sampledSequence = running;
+                sampledStack = stack;
+            }
+            nextSample = Math.max(nextSample, elapsed * 2);
+            if (elapsed >= FREEZE_NANOS && !freezeLogged) {
+                freezeLogged = true;
+                synchronized (log) {
+                    log.println(timestamp() + " EDT blocked for " + CatalogMetrics.format(elapsed) + " so far, at:");
+                    printStack(stack);
+                }
+            }
+        }
+    }
+
+    private void stalled(AWTEvent event, long duration, long stalledSequence) {
+        StackTraceElement[] stack;
+        boolean summarize;
+        synchronized (this) {
+            stack = sampledSequence == stalledSequence ? sampledStack : null;
+            sampledStack = null;
+            String frame = stack == null ? "(no stack taken)" : culprit(stack);
+            Offender offender = offenders.get(frame);
+            if (offender == null) {
+                if (offenders.size() == MAX_OFFENDERS) {
+                    dropLeastCostly();
+                }
+                offender = new Offender(frame);
+                offenders.put(frame, offender);
+            }
+            offender.count++;
+            offender.total += duration;
+            offender.worst = Math.max(offender.worst, duration);
+            summarize = ++stalls % SUMMARY_EVERY == 0;
+        }
+        synchronized (log) {
+            log.println(timestamp() + " EDT stalled " + CatalogMetrics.format(duration) + " dispatching " + describe(event)
+                + (stack == null ? "" : ", last seen at:"));
+            if (stack != null) {
+                printStack(stack);
+            }
+        }
+        if (summarize) {
+            logSummary();
+        }
+    }
+
+    // The worst offenders by total time stalled
+    public synchronized String getSummary() {
+        List<Offender> worst = new ArrayList<>(offenders.values());
+        worst.sort((a, b) -> Long.compare(b.total, a.total));
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("EDT stalls over %s: %d; dispatch p50 %s, p99 %s, max %s%n",
+            CatalogMetrics.format(thresholdNanos), stalls, CatalogMetrics.format(dispatchTimes.percentile(0.5)),
+            CatalogMetrics.format(dispatchTimes.percentile(0.99)), CatalogMetrics.format(dispatchTimes.getMax())));
+        for (int i = 0; i < Math.min(5, worst.size()); i++) {
+            Offender offender = worst.get(i);
+            summary.append(String.format("  %dx, %s in all, worst %s: %s%n", offender.count,
+                CatalogMetrics.format(offender.total), CatalogMetrics.format(offender.worst), offender.frame));
+        }
+        return summary.toString();
+    }
+
+    private void logSummary() {
+        String summary = getSummary();
+        synchronized (log) {
+            log.print(timestamp() + " " + summary);
+        }
+    }
+
+    private void logSummaryAtExit() {
+        boolean any;
+        synchronized (this) {
+            any = stalls > 0;
+        }
+        if (any) {
+            logSummary();
+        }
+    }
+
+    private void dropLeastCostly() {
+        Offender least = null;
+        for (Offender offender : offenders.values()) {
+            if (least == null || offender.total < least.total) {
+                least = offender;
+            }
+        }
+        offenders.remove(least.frame);
+    }
+
+    // The outermost frame of the application's own code, which is the handler
+    // the event ran; the top frame when the stack is all library code
+    private static String culprit(StackTraceElement[] stack) {
+        for (int i = stack.length - 1; i >= 0; i--) {
+            String name = stack[i].getClassName();
+            if (!name.startsWith("java.") && !name.startsWith("javax.") && !name.startsWith("sun.")
+                    && !name.startsWith("jdk.") && !name.startsWith("com.sun.") && !name.contains("$$Lambda")
+                    && !name.equals(EdtWatchdog.class.getName())) {
+                return stack[i].toString();
+            }
+        }
+        return stack.length > 0 ? stack[0].toString() : "(empty stack)";
+    }
+
+    // The event's class and its source's class; a component's own toString is too long to log
+    private static String describe(AWTEvent event) {
+        String description = event.getClass().getSimpleName();
+        if (event instanceof InvocationEvent) {
+            return description;
+        }
+        Object source = event.getSource();
+        return source == null ? description : description + " on " + source.getClass().getName();
+    }
+
+    private void printStack(StackTraceElement[] stack) {
+        for (StackTraceElement frame : stack) {
+            if (frame.getClassName().equals(EdtWatchdog.class.getName())) {
+                break; // Below here is only the event queue dispatching
+            }
+            log.println("\tat " + frame);
+        }
+    }
+
+    private static String timestamp() {
+        return LocalTime.now().format(TIME);
+    }
+}
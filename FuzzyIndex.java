@@ -0,0 +1,264 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Typo-tolerant index over the words of one text field. Each distinct word
+// keeps the ids of the books using it, in a sorted map; a hash map finds the
+// list of a known word without the string comparisons. Looking for the words
+// within edit distance k of a query word walks the map in order like a trie:
+// it keeps one Levenshtein row per character of the current word, reuses the
+// rows of the prefix it shares with the previous word, and once every entry
+// of a row exceeds k jumps past all words starting with that prefix. Only
+// words whose prefixes stay close to the query are ever looked at.
+public class FuzzyIndex {
+    private final Map<String, IdList> words = new HashMap<>();
+    private final TreeMap<String, IdList> sortedWords = new TreeMap<>();
+
+    public void add(int id, String text) {
+        for (String word : words(NGramIndex.fold(text))) {
+            IdList ids = words.get(word);
+            if (ids == null) {
+                ids = new IdList();
+                words.put(word, ids);
+                sortedWords.put(word, ids);
+            }
+            ids.add(id);
+        }
+    }
+
+    public void remove(int id, String text) {
+        for (String word : words(NGramIndex.fold(text))) {
+            IdList ids = words.get(word);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.size() == 0) {
+                    words.remove(word);
+                    sortedWords.remove(word);
+                }
+            }
+        }
+    }
+
+    // Ids of the books with a word close to every word of the query, best first:
+    // ranked by the edit distances summed over the query's words, then by id
+    public int[] search(String foldedQuery) {
+        String[] queryWords = words(foldedQuery);
+        if (queryWords.length == 0) {
+            return new int[0];
+        }
+        long[] matches = null;
+        for (String queryWord : queryWords) {
+            long[] found = find(queryWord);
+            matches = matches == null ? found : intersect(matches, found);
+            if (matches.length == 0) {
+                break;
+            }
+        }
+        for (int i = 0; i < matches.length; i++) {
+            matches[i] = rankKey((int) (matches[i] >>> 32), (int) matches[i]);
+        }
+        return ranked(matches, matches.length);
+    }
+
+    // Books using a word within the allowed distance of the query word, one
+    // entry per book holding the id in the high half and the smallest distance
+    // in the low half, in id order
+    private long[] find(String queryWord) {
+        int allowed = maxDistance(queryWord.length());
+        int columns = queryWord.length() + 1;
+        // rows[d] is the Levenshtein row of the first d characters of the current word;
+        // a prefix longer than the query plus the allowance can never be close
+        int[][] rows = new int[columns + allowed + 1][columns];
+        for (int j = 0; j < columns; j++) {
+            rows[0][j] = j;
+        }
+        List<IdList> close = new ArrayList<>();
+        List<Integer> distances = new ArrayList<>();
+        int total = 0;
+
+        String previous = "";
+        int valid = 0; // rows of previous that have been computed
+        Map.Entry<String, IdList> entry = sortedWords.firstEntry();
+        while (entry != null) {
+            String word = entry.getKey();
+            int depth = Math.min(valid, commonPrefix(previous, word));
+            boolean pruned = false;
+            while (depth < word.length()) {
+                depth++;
+                if (nextRow(rows[depth - 1], rows[depth], word.charAt(depth - 1), queryWord) > allowed) {
+                    pruned = true;
+                    break;
+                }
+            }
+            previous = word;
+            valid = depth;
+            if (pruned) {
+                // No word starting with these characters can come close
+                entry = sortedWords.higherEntry(word.substring(0, depth) + Character.MAX_VALUE);
+                continue;
+            }
+            int distance = rows[depth][columns - 1];
+            if (distance <= allowed) {
+                close.add(entry.getValue());
+                distances.add(distance);
+                total += entry.getValue().size();
+            }
+            entry = sortedWords.higherEntry(word);
+        }
+
+        long[] found = new long[total];
+        int count = 0;
+        for (int i = 0; i < close.size(); i++) {
+            int[] ids = close.get(i).toArray();
+            long distance = distances.get(i);
+            for (int id : ids) {
+                found[count++] = (long) id << 32 | distance;
+            }
+        }
+        Arrays.sort(found);
+        // Entries of one book sort together with the closest word first
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (kept == 0 || found[i] >>> 32 != found[kept - 1] >>> 32) {
+                found[kept++] = found[i];
+            }
+        }
+        return kept == found.length ? found : Arrays.copyOf(found, kept);
+    }
+
+    // Fills row with the Levenshtein row one character further along than
+    // previous and returns the smallest entry
+    private static int nextRow(int[] previous, int[] row, char c, String queryWord) {
+        row[0] = previous[0] + 1;
+        int best = row[0];
+        for (int j = 1; j < row.length; j++) {
+            int value = previous[j - 1] + (c == queryWord.charAt(j - 1) ? 0 : 1);
+            value = Math.min(value, Math.min(previous[j], row[j - 1]) + 1);
+            row[j] = value;
+            best = Math.min(best, value);
+        }
+        return best;
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    // Books in both lists, adding up their distances
+    private static long[] intersect(long[] a, long[] b) {
+        long[] both = new long[Math.min(a.length, b.length)];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            long idA = a[i] >>> 32;
+            long idB = b[j] >>> 32;
+            if (idA == idB) {
+                both[k++] = a[i++] + (b[j++] & 0xFFFFFFFFL);
+            } else if (idA < idB) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return k == both.length ? both : Arrays.copyOf(both, k);
+    }
+
+    // Sum of the distances from each query word to the closest word of the
+    // text, or -1 when some query word has nothing close enough. Used to check
+    // books one by one before the index is built.
+    public static int distance(String[] queryWords, String foldedText) {
+        String[] textWords = words(foldedText);
+        int[][] rows = new int[2][];
+        int total = 0;
+        for (String queryWord : queryWords) {
+            int allowed = maxDistance(queryWord.length());
+            int best = allowed + 1;
+            for (int i = 0; i < textWords.length && best > 0; i++) {
+                best = Math.min(best, distance(queryWord, textWords[i], allowed, rows));
+            }
+            if (best > allowed) {
+                return -1;
+            }
+            total += best;
+        }
+        return total;
+    }
+
+    // Short words tolerate fewer typos, or every three-letter word would match
+    public static int maxDistance(int length) {
+        return length <= 2 ? 0 : length <= 5 ? 1 : 2;
+    }
+
+    public static long rankKey(int id, int distance) {
+        return (long) distance << 32 | id;
+    }
+
+    // Ids of the first count rank keys, best first
+    public static int[] ranked(long[] keys, int count) {
+        Arrays.sort(keys, 0, count);
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = (int) keys[i];
+        }
+        return ids;
+    }
+
+    // Splits folded text at every character that is not a letter or digit
+    public static String[] words(String folded) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean inWord = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (inWord && start < 0) {
+                start = i;
+            } else if (!inWord && start >= 0) {
+                words.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return words.toArray(new String[0]);
+    }
+
+    // Levenshtein distance between a and b, or limit + 1 as soon as it is
+    // certain to exceed limit. rows holds two scratch rows, grown as needed.
+    private static int distance(String a, String b, int limit, int[][] rows) {
+        int n = b.length();
+        if (Math.abs(a.length() - n) > limit) {
+            return limit + 1;
+        }
+        if (rows[0] == null || rows[0].length <= n) {
+            rows[0] = new int[n + 1];
+            rows[1] = new int[n + 1];
+        }
+        int[] previous = rows[0];
+        int[] current = rows[1];
+        for (int j = 0; j <= n; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            char c = a.charAt(i - 1);
+            current[0] = i;
+            int best = i;
+            for (int j = 1; j <= n; j++) {
+                int value = previous[j - 1] + (c == b.charAt(j - 1) ? 0 : 1);
+                value = Math.min(value, Math.min(previous[j], current[j - 1]) + 1);
+                current[j] = value;
+                best = Math.min(best, value);
+            }
+            if (best > limit) {
+                return limit + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[n], limit + 1);
+    }
+}
@@ -0,0 +1,34 @@
+import java.time.Instant;
+
+// One entry in the borrowing history: a copy going out to a member, coming
+// back or having its loan renewed, or a member joining or leaving its holds
+// queue. Books are identified by normalized ISBN, which outlives catalog ids.
+public class HistoryEvent {
+    // Stored by ordinal, so new types only ever go at the end
+    public enum Type { LOAN, RETURN, RENEW, HOLD, CANCEL_HOLD }
+
+    private final Type type;
+    private final long time;
+    private final String isbn;
+    private final int memberNumber;
+
+    public HistoryEvent(Type type, long time, String isbn, int memberNumber) {
+        this.type = type;
+        this.time = time;
+        this.isbn = isbn;
+        this.memberNumber = memberNumber;
+    }
+
+    public Type getType() { return type; }
+
+    // Milliseconds since the epoch
+    public long getTime() { return time; }
+
+    public Instant getInstant() { return Instant.ofEpochMilli(time); }
+
+    public String getIsbn() { return isbn; }
+
+    // 0 when the member is not known, such as a return of a book lent out
+    // before circulation was tracking it
+    public int getMemberNumber() { return memberNumber; }
+}
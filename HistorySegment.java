@@ -0,0 +1,494 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// One month of borrowing history in a file of its own. Events are appended in
+// blocks of a few thousand, each deflated and headed by its time range, so a
+// query only inflates the blocks that overlap it, one at a time. Once a later
+// month has begun the segment is sealed: a summary with per-ISBN loan and
+// return counts and a Bloom filter of its ISBNs is written next to it, and
+// queries that cover the whole month, or miss its ISBNs, never open the
+// blocks at all. Only the active segment keeps its counts in memory.
+public class HistorySegment {
+    private static final int SEGMENT_MAGIC = 0x4C4D5348; // "LMSH"
+    private static final int SUMMARY_MAGIC = 0x4C4D5353; // "LMSS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    // Compressed length, raw length, event count, CRC32, last sequence, min and max time
+    private static final int BLOCK_HEADER_SIZE = 40;
+    private static final int BLOOM_BITS_PER_ISBN = 10;
+    private static final int BLOOM_HASHES = 4;
+
+    private final Path path;
+    private final YearMonth month;
+    private long minTime = Long.MAX_VALUE;
+    private long maxTime = Long.MIN_VALUE;
+    private long eventCount;
+    private long lastSequence;
+    private long length;
+    private long[] bloom;                 // set once sealed
+    private Map<String, int[]> counts;    // loans and returns per ISBN while active
+    private FileChannel channel;          // open for appending while active
+
+    private HistorySegment(Path path, YearMonth month) {
+        this.path = path;
+        this.month = month;
+    }
+
+    // Starts an empty, active segment for month
+    public static HistorySegment create(Path path, YearMonth month) throws IOException {
+        HistorySegment segment = new HistorySegment(path, month);
+        segment.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(SEGMENT_MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining()) {
+            segment.channel.write(header, header.position());
+        }
+        segment.channel.force(true);
+        segment.length = HEADER_SIZE;
+        segment.counts = new HashMap<>();
+        return segment;
+    }
+
+    // Opens a segment written earlier. A sealed segment only reads its summary;
+    // otherwise the blocks are scanned, and a torn block left by a crash is cut
+    // off. Unless active, a segment without a summary is sealed on the spot.
+    public static HistorySegment open(Path path, YearMonth month, boolean active) throws IOException {
+        HistorySegment segment = new HistorySegment(path, month);
+        if (!active && segment.readSummary()) {
+            return segment;
+        }
+        segment.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment.counts = new HashMap<>();
+        segment.recover();
+        if (!active) {
+            segment.seal();
+        }
+        return segment;
+    }
+
+    public YearMonth getMonth() { return month; }
+
+    public long getEventCount() { return eventCount; }
+
+    public long getLastSequence() { return lastSequence; }
+
+    // Bytes of complete blocks; a query scans only up to the length it saw
+    public long getLength() { return length; }
+
+    public boolean isSealed() { return counts == null; }
+
+    // Times are epoch milliseconds; ranges include from and exclude to
+    public boolean overlaps(long from, long to) {
+        return eventCount > 0 && minTime < to && maxTime >= from;
+    }
+
+    public boolean coveredBy(long from, long to) {
+        return eventCount > 0 && minTime >= from && maxTime < to;
+    }
+
+    // False means no event of this segment has the ISBN; true may be a false positive
+    public boolean mightContain(String isbn) {
+        if (counts != null) {
+            return counts.containsKey(isbn);
+        }
+        int bits = bloom.length * 64;
+        int hash = isbn.hashCode();
+        int step = mix(hash) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = (hash + i * step) & (bits - 1);
+            if ((bloom[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Accounts for an event that belongs to this active segment but may still
+    // be waiting for its block
+    public void count(HistoryEvent event) {
+        int[] isbnCounts = counts.computeIfAbsent(event.getIsbn(), isbn -> new int[2]);
+        if (event.getType() == HistoryEvent.Type.LOAN) {
+            isbnCounts[0]++;
+        } else if (event.getType() == HistoryEvent.Type.RETURN) {
+            isbnCounts[1]++;
+        }
+        minTime = Math.min(minTime, event.getTime());
+        maxTime = Math.max(maxTime, event.getTime());
+        eventCount++;
+    }
+
+    // Adds this segment's loans and returns per ISBN to totals
+    public void addCountsTo(Map<String, int[]> totals) throws IOException {
+        if (counts != null) {
+            for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+                add(totals, entry.getKey(), entry.getValue()[0], entry.getValue()[1]);
+            }
+            return;
+        }
+        try (DataInputStream data = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(summaryPath()), 64 * 1024))) {
+            data.skipBytes(40);
+            data.skipBytes(data.readInt() * 8);
+            int entries = data.readInt();
+            for (int i = 0; i < entries; i++) {
+                String isbn = data.readUTF();
+                add(totals, isbn, data.readInt(), data.readInt());
+            }
+        }
+    }
+
+    // Writes the events as one deflated block and makes it durable; a block
+    // that fails to write is cut off again
+    public void appendBlock(List<HistoryEvent> events, long blockLastSequence, Deflater deflater) throws IOException {
+        byte[] raw = encode(events);
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+        byte[] chunk = new byte[16 * 1024];
+        while (!deflater.finished()) {
+            compressed.write(chunk, 0, deflater.deflate(chunk));
+        }
+        byte[] payload = compressed.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+
+        long blockMin = Long.MAX_VALUE;
+        long blockMax = Long.MIN_VALUE;
+        for (HistoryEvent event : events) {
+            blockMin = Math.min(blockMin, event.getTime());
+            blockMax = Math.max(blockMax, event.getTime());
+        }
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER_SIZE + payload.length);
+        block.putInt(payload.length).putInt(raw.length).putInt(events.size()).putInt((int) crc.getValue())
+            .putLong(blockLastSequence).putLong(blockMin).putLong(blockMax).put(payload).flip();
+        long position = length;
+        try {
+            while (block.hasRemaining()) {
+                position += channel.write(block, position);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            try {
+                channel.truncate(length);
+            } catch (IOException truncateError) {
+                e.addSuppressed(truncateError);
+            }
+            throw e;
+        }
+        length = position;
+        lastSequence = blockLastSequence;
+    }
+
+    // Passes every event in [from, to) found in the first limit bytes, in order;
+    // with an isbn, only the events of that book
+    public void scan(long from, long to, long limit, String isbn, Consumer<HistoryEvent> consumer)
+            throws IOException {
+        byte[] key = isbn == null ? null : isbn.getBytes(StandardCharsets.UTF_8);
+        try (FileChannel reader = FileChannel.open(path, StandardOpenOption.READ)) {
+            Inflater inflater = new Inflater();
+            try {
+                ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+                long position = HEADER_SIZE;
+                while (position + BLOCK_HEADER_SIZE <= limit) {
+                    readFully(reader, header, position);
+                    int compressedLength = header.getInt(0);
+                    long blockMin = header.getLong(24);
+                    long blockMax = header.getLong(32);
+                    if (blockMin < to && blockMax >= from) {
+                        byte[] raw = inflate(reader, position + BLOCK_HEADER_SIZE, compressedLength,
+                            header.getInt(4), inflater);
+                        decode(raw, header.getInt(8), from, to, key, consumer);
+                    }
+                    position += BLOCK_HEADER_SIZE + compressedLength;
+                }
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    // Writes the summary and stops appending; the segment is read-only from now on
+    public void seal() throws IOException {
+        int distinct = Math.max(1, counts.size());
+        int bits = Integer.highestOneBit(Math.max(64, distinct * BLOOM_BITS_PER_ISBN - 1) << 1);
+        bloom = new long[bits / 64];
+        TreeMap<String, int[]> sorted = new TreeMap<>(counts);
+        for (String isbn : sorted.keySet()) {
+            int hash = isbn.hashCode();
+            int step = mix(hash) | 1;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = (hash + i * step) & (bits - 1);
+                bloom[bit >>> 6] |= 1L << bit;
+            }
+        }
+
+        Path target = summaryPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temp), 64 * 1024))) {
+            data.writeInt(SUMMARY_MAGIC);
+            data.writeInt(VERSION);
+            data.writeLong(minTime);
+            data.writeLong(maxTime);
+            data.writeLong(eventCount);
+            data.writeLong(lastSequence);
+            data.writeInt(bloom.length);
+            for (long word : bloom) {
+                data.writeLong(word);
+            }
+            data.writeInt(sorted.size());
+            for (Map.Entry<String, int[]> entry : sorted.entrySet()) {
+                data.writeUTF(entry.getKey());
+                data.writeInt(entry.getValue()[0]);
+                data.writeInt(entry.getValue()[1]);
+            }
+        }
+        try (FileChannel summary = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            summary.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        counts = null;
+        close();
+    }
+
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private Path summaryPath() {
+        String name = path.getFileName().toString();
+        return path.resolveSibling(name.substring(0, name.length() - 4) + ".sum");
+    }
+
+    // Loads the header and Bloom filter of the summary; false if there is none
+    private boolean readSummary() throws IOException {
+        try (DataInputStream data = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(summaryPath()), 64 * 1024))) {
+            if (data.readInt() != SUMMARY_MAGIC || data.readInt() != VERSION) {
+                return false;
+            }
+            minTime = data.readLong();
+            maxTime = data.readLong();
+            eventCount = data.readLong();
+            lastSequence = data.readLong();
+            long[] words = new long[data.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = data.readLong();
+            }
+            bloom = words;
+            length = Files.size(path);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    // Rebuilds the counts from the blocks and cuts off a torn or corrupt tail
+    private void recover() throws IOException {
+        ByteBuffer fileHeader = ByteBuffer.allocate(HEADER_SIZE);
+        if (channel.size() < HEADER_SIZE) {
+            throw new IOException("Truncated history segment: " + path);
+        }
+        readFully(channel, fileHeader, 0);
+        if (fileHeader.getInt(0) != SEGMENT_MAGIC || fileHeader.getInt(4) != VERSION) {
+            throw new IOException("Not a history segment: " + path);
+        }
+        Inflater inflater = new Inflater();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+            long size = channel.size();
+            long position = HEADER_SIZE;
+            while (position + BLOCK_HEADER_SIZE <= size) {
+                readFully(channel, header, position);
+                int compressedLength = header.getInt(0);
+                if (compressedLength <= 0 || position + BLOCK_HEADER_SIZE + compressedLength > size) {
+                    break;
+                }
+                byte[] raw;
+                try {
+                    raw = inflate(channel, position + BLOCK_HEADER_SIZE, compressedLength, header.getInt(4),
+                        inflater, header.getInt(12));
+                } catch (IOException e) {
+                    break;
+                }
+                decode(raw, header.getInt(8), Long.MIN_VALUE, Long.MAX_VALUE, null, this::count);
+                lastSequence = header.getLong(16);
+                position += BLOCK_HEADER_SIZE + compressedLength;
+            }
+            length = position;
+            if (position < size) {
+                channel.truncate(position);
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] inflate(FileChannel reader, long position, int compressedLength, int rawLength,
+            Inflater inflater) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(compressedLength);
+        readFully(reader, payload, position);
+        return inflate(payload.array(), rawLength, inflater);
+    }
+
+    // Same, but first checks the payload against its CRC
+    private static byte[] inflate(FileChannel reader, long position, int compressedLength, int rawLength,
+            Inflater inflater, int checksum) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(compressedLength);
+        readFully(reader, payload, position);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), 0, compressedLength);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Corrupt history block");
+        }
+        return inflate(payload.array(), rawLength, inflater);
+    }
+
+    private static byte[] inflate(byte[] compressed, int rawLength, Inflater inflater) throws IOException {
+        inflater.reset();
+        inflater.setInput(compressed);
+        byte[] raw = new byte[rawLength];
+        try {
+            int inflated = 0;
+            while (inflated < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(raw, inflated, rawLength - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != rawLength) {
+                throw new IOException("Corrupt history block");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt history block", e);
+        }
+        return raw;
+    }
+
+    private static void readFully(FileChannel reader, ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (reader.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of history segment");
+            }
+        }
+        buffer.flip();
+    }
+
+    // Event layout: time as a zigzag varint delta from the previous event,
+    // type, member number as a varint, then the ISBN's UTF-8 length and bytes
+    private static byte[] encode(List<HistoryEvent> events) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(events.size() * 24);
+        long previous = 0;
+        for (HistoryEvent event : events) {
+            long delta = event.getTime() - previous;
+            writeVarLong(out, (delta << 1) ^ (delta >> 63));
+            previous = event.getTime();
+            out.write(event.getType().ordinal());
+            writeVarLong(out, event.getMemberNumber());
+            byte[] isbn = event.getIsbn().getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, isbn.length);
+            out.write(isbn, 0, isbn.length);
+        }
+        return out.toByteArray();
+    }
+
+    // Events outside [from, to) or for another ISBN than key are skipped before
+    // anything is allocated for them
+    private static void decode(byte[] raw, int count, long from, long to, byte[] key,
+            Consumer<HistoryEvent> consumer) {
+        HistoryEvent.Type[] types = HistoryEvent.Type.values();
+        int[] position = {0};
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long zigzag = readVarLong(raw, position);
+            long time = previous + ((zigzag >>> 1) ^ -(zigzag & 1));
+            previous = time;
+            HistoryEvent.Type type = types[raw[position[0]++]];
+            int member = (int) readVarLong(raw, position);
+            int isbnLength = (int) readVarLong(raw, position);
+            int isbnStart = position[0];
+            position[0] += isbnLength;
+            if (time < from || time >= to || (key != null && !matches(raw, isbnStart, isbnLength, key))) {
+                continue;
+            }
+            String isbn = new String(raw, isbnStart, isbnLength, StandardCharsets.UTF_8);
+            consumer.accept(new HistoryEvent(type, time, isbn, member));
+        }
+    }
+
+    private static boolean matches(byte[] raw, int start, int length, byte[] key) {
+        if (length != key.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (raw[start + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(byte[] raw, int[] position) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = raw[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    private static void add(Map<String, int[]> totals, String isbn, int loans, int returns) {
+        int[] total = totals.computeIfAbsent(isbn, key -> new int[2]);
+        total[0] += loans;
+        total[1] += returns;
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        return hash ^ (hash >>> 16);
+    }
+}
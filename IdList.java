@@ -0,0 +1,198 @@
+import java.util.Arrays;
+
+// Sorted, duplicate-free list of book ids used as a posting list.
+// Catalog ids only grow, so adding a new book is an append. Edits never shift
+// the list: a removed id stays in place as a tombstone, its bits inverted, so
+// the list stays sorted by id and re-adding the id just restores it; an old
+// id added back out of order waits in a short sorted side list. Both are
+// merged into the list in one pass once there are enough of them, which
+// spreads that pass over many edits. Reads see the tombstones and the side
+// list, so they never have to rewrite the list themselves.
+public class IdList {
+    private int[] ids = new int[4]; // ~id marks a removed id
+    private int stored;
+    private int removed;
+    private int[] pending = new int[0];
+    private int pendingSize;
+
+    public void add(int id) {
+        if (stored == 0 || id > idAt(stored - 1)) {
+            if (pendingSize > 0 && pending[pendingSize - 1] >= id) {
+                insertPending(id); // An append would go ahead of a pending id
+                return;
+            }
+            if (stored == ids.length) {
+                ids = Arrays.copyOf(ids, stored * 2);
+            }
+            ids[stored++] = id;
+            return;
+        }
+        int index = search(id);
+        if (index >= 0) {
+            if (ids[index] < 0) {
+                ids[index] = id;
+                removed--;
+            }
+            return;
+        }
+        insertPending(id);
+    }
+
+    public void remove(int id) {
+        int index = search(id);
+        if (index >= 0) {
+            if (ids[index] >= 0) {
+                ids[index] = ~id;
+                removed++;
+                if (removed > Math.max(16, stored / 8)) {
+                    compact();
+                }
+            }
+            return;
+        }
+        index = Arrays.binarySearch(pending, 0, pendingSize, id);
+        if (index >= 0) {
+            System.arraycopy(pending, index + 1, pending, index, pendingSize - index - 1);
+            pendingSize--;
+        }
+    }
+
+    public boolean contains(int id) {
+        int index = search(id);
+        return index >= 0 ? ids[index] >= 0 : Arrays.binarySearch(pending, 0, pendingSize, id) >= 0;
+    }
+
+    // Keeps the ids among the first count entries of sorted that are also in this
+    // list and returns how many were kept. Walks both lists together, jumping
+    // ahead with a binary search when this list is much longer.
+    public int retainAll(int[] sorted, int count) {
+        int kept = 0;
+        int from = 0;
+        boolean skewed = stored > count * 8;
+        for (int i = 0; i < count; i++) {
+            int id = sorted[i];
+            boolean found = false;
+            if (skewed) {
+                int index = search(id, from);
+                if (index >= 0) {
+                    found = ids[index] >= 0;
+                    from = index + 1;
+                } else {
+                    from = -index - 1;
+                }
+            } else {
+                while (from < stored && idAt(from) < id) {
+                    from++;
+                }
+                if (from < stored && idAt(from) == id) {
+                    found = ids[from] >= 0;
+                    from++;
+                }
+            }
+            if (found || pendingSize > 0 && Arrays.binarySearch(pending, 0, pendingSize, id) >= 0) {
+                sorted[kept++] = id;
+            } else if (!skewed && from == stored && pendingSize == 0) {
+                break;
+            }
+        }
+        return kept;
+    }
+
+    public int size() {
+        return stored - removed + pendingSize;
+    }
+
+    public int[] toArray() {
+        int[] result = new int[size()];
+        copyTo(result, 0);
+        return result;
+    }
+
+    // Copies the ids in order into target from offset on; returns the offset after them
+    public int copyTo(int[] target, int offset) {
+        int p = 0;
+        for (int i = 0; i < stored; i++) {
+            int id = ids[i];
+            if (id < 0) {
+                continue;
+            }
+            while (p < pendingSize && pending[p] < id) {
+                target[offset++] = pending[p++];
+            }
+            target[offset++] = id;
+        }
+        while (p < pendingSize) {
+            target[offset++] = pending[p++];
+        }
+        return offset;
+    }
+
+    private void insertPending(int id) {
+        int index = Arrays.binarySearch(pending, 0, pendingSize, id);
+        if (index >= 0) {
+            return;
+        }
+        index = -index - 1;
+        if (pendingSize == pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(8, pendingSize * 2));
+        }
+        System.arraycopy(pending, index, pending, index + 1, pendingSize - index);
+        pending[index] = id;
+        pendingSize++;
+        // Keeping the side list sorted costs its length per add, merging costs
+        // the list's; a side list of about the square root balances the two
+        if ((long) pendingSize * pendingSize > Math.max(256, stored)) {
+            compact();
+        }
+    }
+
+    // Merges the side list in and drops the tombstones
+    private void compact() {
+        int live = size();
+        if (pendingSize == 0 && ids.length <= Math.max(16, live * 4)) {
+            int count = 0;
+            for (int i = 0; i < stored; i++) {
+                if (ids[i] >= 0) {
+                    ids[count++] = ids[i];
+                }
+            }
+        } else {
+            int[] merged = new int[Math.max(4, live + live / 4)];
+            copyTo(merged, 0);
+            ids = merged;
+        }
+        stored = live;
+        removed = 0;
+        pendingSize = 0;
+        if (pending.length > 64) {
+            pending = new int[0];
+        }
+    }
+
+    private int idAt(int index) {
+        int id = ids[index];
+        return id < 0 ? ~id : id;
+    }
+
+    private int search(int id) {
+        return search(id, 0);
+    }
+
+    // Binary search of the stored ids, tombstones included, from index from
+    private int search(int id, int from) {
+        int low = from;
+        int high = stored - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = idAt(middle);
+            if (value < id) {
+                low = middle + 1;
+            } else if (value > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+}
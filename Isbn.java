@@ -0,0 +1,124 @@
+// Check digits and the packed form of ISBNs. Hyphens and spaces are ignored,
+// as in Catalog.normalizeIsbn. A valid ISBN-13 is thirteen digits whose
+// weights alternate 1 and 3 and sum to a multiple of 10; it packs into a long
+// holding the same number, so it can be looked up without building a string.
+// An ISBN-10 weighs its digits 10 down to 1, with X standing for 10 in the
+// last place, and sums to a multiple of 11. It names the same book as the
+// ISBN-13 made of 978, its first nine digits and a new check digit, and packs
+// into that number, so either form finds the book. Anything else is some
+// other kind of identifier, which the catalog accepts and keeps as a string.
+public final class Isbn {
+    private Isbn() {
+    }
+
+    // The ISBN-13 as a number, an ISBN-10 converted to its ISBN-13 first, or
+    // -1 if isbn is neither with the right check digit. Allocates nothing, so
+    // scanner input can be looked up as it comes.
+    public static long pack(CharSequence isbn) {
+        long value = 0;
+        int digits = 0;
+        int sum13 = 0;
+        int sum10 = 0;
+        boolean checkX = false;
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c == '-' || Character.isWhitespace(c)) {
+                continue;
+            }
+            if (checkX || digits == 13) {
+                return -1;
+            }
+            if (c == 'X' || c == 'x') {
+                if (digits != 9) {
+                    return -1;
+                }
+                checkX = true;
+                sum10 += 10;
+                digits++;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+            sum13 += (digits % 2 == 0 ? 1 : 3) * (c - '0');
+            sum10 += (10 - digits) * (c - '0');
+            digits++;
+        }
+        if (digits == 13) {
+            return sum13 % 10 == 0 ? value : -1;
+        }
+        if (digits == 10 && sum10 % 11 == 0) {
+            return withPrefix978(checkX ? value : value / 10);
+        }
+        return -1;
+    }
+
+    // Whether isbn has the shape of an ISBN-10 or ISBN-13, whatever its check
+    // digit: ten characters of digits with an X allowed last, or thirteen digits
+    public static boolean hasIsbnForm(CharSequence isbn) {
+        int length = 0;
+        boolean checkX = false;
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c == '-' || Character.isWhitespace(c)) {
+                continue;
+            }
+            if (checkX) {
+                return false;
+            }
+            if (c == 'X' || c == 'x') {
+                if (length != 9) {
+                    return false;
+                }
+                checkX = true;
+            } else if (c < '0' || c > '9') {
+                return false;
+            }
+            length++;
+        }
+        return length == 10 || length == 13;
+    }
+
+    // The ISBN-10 form of a packed ISBN-13, as Catalog.normalizeIsbn writes
+    // it, or null if the ISBN-13 does not start with 978 and so has none
+    public static String toIsbn10(long packed) {
+        if (packed / 10000000000L != 978) {
+            return null;
+        }
+        long nine = packed / 10 % 1000000000L;
+        char[] digits = new char[10];
+        int sum = 0;
+        for (int i = 8; i >= 0; i--) {
+            int digit = (int) (nine % 10);
+            digits[i] = (char) ('0' + digit);
+            sum += (10 - i) * digit;
+            nine /= 10;
+        }
+        int check = (11 - sum % 11) % 11;
+        digits[9] = check == 10 ? 'X' : (char) ('0' + check);
+        return new String(digits);
+    }
+
+    // The thirteen digits of a packed ISBN-13, as Catalog.normalizeIsbn writes them
+    public static String unpack(long packed) {
+        char[] digits = new char[13];
+        for (int i = 12; i >= 0; i--) {
+            digits[i] = (char) ('0' + packed % 10);
+            packed /= 10;
+        }
+        return new String(digits);
+    }
+
+    // The ISBN-13 for the first nine digits of an ISBN-10
+    private static long withPrefix978(long nine) {
+        long twelve = 978000000000L + nine;
+        long rest = twelve;
+        int sum = 0;
+        for (int position = 11; position >= 0; position--) {
+            sum += (position % 2 == 0 ? 1 : 3) * (int) (rest % 10);
+            rest /= 10;
+        }
+        return twelve * 10 + (10 - sum % 10) % 10;
+    }
+}
@@ -1,15 +1,17 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.ArrayList;
-import java.util.List;
 
 public class LibraryManagementSystem extends JFrame {
     private JTabbedPane tabbedPane;
     private BookPanel bookPanel;
     private SearchPanel searchPanel;
     private CategoryPanel categoryPanel;
-    private List<Book> allBooks;
+    private CirculationPanel circulationPanel;
+    private Catalog catalog;
+    private Circulation circulation;
+    private CatalogJournal journal; // null when the library data could not be opened
+    private BorrowingHistory history; // likewise
 
     // Custom colors
     private static final Color PRIMARY_COLOR = new Color(41, 128, 185);    // Blue
@@ -39,37 +41,115 @@ public class LibraryManagementSystem extends JFrame {
         UIManager.put("TableHeader.foreground", Color.WHITE);
         
         // Initialize components
-        allBooks = new ArrayList<>();
+        // -Dlibrary.storage=compact keeps large catalogs in the dictionary-encoded layout
+        boolean compact = "compact".equals(System.getProperty("library.storage"));
+        java.nio.file.Path dataDirectory = dataDirectory();
+        catalog = openCatalog(dataDirectory, compact ? new CompactBookStore() : new ObjectBookStore());
+        if (compact && catalog.isMapped()) {
+            System.err.println("library.storage=compact has no effect: the catalog is mapped from its snapshot in "
+                + dataDirectory + ", which is already columnar and off the heap");
+        }
+        // Operation latencies go out over JMX as library:type=CatalogMetrics;
+        // without it they still show in the books tab
+        catalog.getMetrics().register();
+        history = openHistory(dataDirectory.resolve("history"));
+        circulation = openCirculation(catalog, history);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::closeOnExit, "library-shutdown"));
         tabbedPane = new JTabbedPane();
         tabbedPane.setFont(new Font("Segoe UI", Font.BOLD, 14));
         
-        bookPanel = new BookPanel(allBooks);
-        searchPanel = new SearchPanel();
-        categoryPanel = new CategoryPanel();
+        bookPanel = new BookPanel(catalog);
+        searchPanel = new SearchPanel(catalog);
+        categoryPanel = new CategoryPanel(catalog);
+        circulationPanel = new CirculationPanel(catalog, circulation);
         
         // Add tabs with custom icons
         tabbedPane.addTab("Books", createIcon("📚"), bookPanel);
         tabbedPane.addTab("Search", createIcon("🔍"), searchPanel);
         tabbedPane.addTab("Categories", createIcon("📑"), categoryPanel);
-        
-        // Connect panels
-        searchPanel.setBooks(allBooks);
-        categoryPanel.setBooks(allBooks);
+        tabbedPane.addTab("Circulation", createIcon("🔁"), circulationPanel);
         
         // Add tabbed pane with padding
         JPanel mainPanel = new JPanel(new BorderLayout());
         mainPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
         mainPanel.add(tabbedPane, BorderLayout.CENTER);
         add(mainPanel);
-        
-        // Add window listener to update other panels when books change
-        addWindowListener(new WindowAdapter() {
-            @Override
-            public void windowActivated(WindowEvent e) {
-                searchPanel.setBooks(allBooks);
-                categoryPanel.setBooks(allBooks);
+    }
+
+    // -Dlibrary.data chooses where the library is kept
+    private static java.nio.file.Path dataDirectory() {
+        String defaultDirectory = System.getProperty("user.home") + java.io.File.separator + ".library";
+        return java.nio.file.Paths.get(System.getProperty("library.data", defaultDirectory));
+    }
+
+    // Restores the catalog saved by earlier sessions and keeps journaling every
+    // change. A saved catalog is mapped from its snapshot, so emptyStore is
+    // only used for a brand-new library.
+    private Catalog openCatalog(java.nio.file.Path directory, BookStore emptyStore) {
+        try {
+            journal = CatalogJournal.open(directory, emptyStore);
+            return journal.getCatalog();
+        } catch (java.io.IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(null,
+                "Could not open the library data in " + directory + ": " + e.getMessage()
+                    + "\nChanges made in this session will not be saved.",
+                "Storage Error",
+                JOptionPane.WARNING_MESSAGE);
+            return new Catalog(emptyStore);
+        }
+    }
+
+    // Returns null if the history cannot be opened; circulation then works without it
+    private BorrowingHistory openHistory(java.nio.file.Path directory) {
+        try {
+            return BorrowingHistory.open(directory);
+        } catch (java.io.IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(null,
+                "Could not open the borrowing history in " + directory + ": " + e.getMessage()
+                    + "\nLoans and returns made in this session will not be recorded.",
+                "Storage Error",
+                JOptionPane.WARNING_MESSAGE);
+            return null;
+        }
+    }
+
+    // Rebuilds the open loans and holds from the history; if it cannot be read
+    // back, circulation works without it
+    private Circulation openCirculation(Catalog catalog, BorrowingHistory history) {
+        try {
+            return new Circulation(catalog, history);
+        } catch (java.io.UncheckedIOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(null,
+                "Could not read the borrowing history: " + e.getCause().getMessage()
+                    + "\nLoans and holds from earlier sessions are not shown,"
+                    + " and those made in this session will not be recorded.",
+                "Storage Error",
+                JOptionPane.WARNING_MESSAGE);
+            return new Circulation(catalog);
+        }
+    }
+
+    // Circulation publishes Available flags in the background, so the last
+    // ones are written to the catalog before its journal closes
+    private void closeOnExit() {
+        circulation.flush();
+        try {
+            if (journal != null) {
+                journal.close();
             }
-        });
+        } catch (java.io.IOException e) {
+            e.printStackTrace();
+        }
+        try {
+            if (history != null) {
+                history.close();
+            }
+        } catch (java.io.IOException e) {
+            e.printStackTrace();
+        }
     }
 
     private ImageIcon createIcon(String emoji) {
@@ -88,11 +168,21 @@ public class LibraryManagementSystem extends JFrame {
     }
 
     public static void main(String[] args) {
+        // Any arguments select the headless batch mode
+        if (args.length > 0) {
+            CatalogBatch.main(args);
+            return;
+        }
+
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         } catch (Exception e) {
             e.printStackTrace();
         }
+
+        // Events that hold up the window longer than -Dlibrary.edtStallMillis
+        // (100 by default, 0 for none) are logged to stderr with their stack
+        EdtWatchdog.install(Long.getLong("library.edtStallMillis", 100), System.err);
         
         SwingUtilities.invokeLater(() -> {
             new LibraryManagementSystem().setVisible(true);
@@ -0,0 +1,34 @@
+import java.time.LocalDate;
+
+// One copy out with one member. Loans are immutable; renewing replaces the
+// loan with one that has a later due date.
+public class Loan {
+    private final int bookId;
+    private final String isbn;
+    private final int memberNumber;
+    private final LocalDate issued;
+    private final LocalDate due;
+
+    public Loan(int bookId, String isbn, int memberNumber, LocalDate issued, LocalDate due) {
+        this.bookId = bookId;
+        this.isbn = isbn;
+        this.memberNumber = memberNumber;
+        this.issued = issued;
+        this.due = due;
+    }
+
+    public int getBookId() { return bookId; }
+
+    // The ISBN when the copy went out, kept for the history should the book be removed
+    public String getIsbn() { return isbn; }
+
+    public int getMemberNumber() { return memberNumber; }
+
+    public LocalDate getIssued() { return issued; }
+
+    public LocalDate getDue() { return due; }
+
+    public boolean isOverdue(LocalDate today) {
+        return today.isAfter(due);
+    }
+}
@@ -0,0 +1,115 @@
+// Hash map from non-negative long keys to int values, with no boxing: keys and
+// values sit side by side in one long array and collisions probe the next
+// slots. Removal shifts later entries of the probe run back instead of
+// leaving tombstones, so lookups never wade through deleted slots. The table
+// is kept at most half full. Everything lives in one array that is replaced
+// whole when the table grows, so an optimistic reader never pairs a key from
+// one table with a value from another; a reader that races a write may still
+// get a wrong answer and must validate it.
+public class LongIntMap {
+    private static final long EMPTY = -1;
+
+    private long[] table; // key at 2 * slot, value at 2 * slot + 1
+    private int size;
+
+    public LongIntMap() {
+        table = newTable(16);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // The value for key, or -1
+    public int get(long key) {
+        long[] current = table;
+        int mask = current.length / 2 - 1;
+        int slot = hash(key) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            long found = current[2 * slot];
+            if (found == key) {
+                return (int) current[2 * slot + 1];
+            }
+            if (found == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public void put(long key, int value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key: " + key);
+        }
+        if ((size + 1) * 2 > table.length / 2) {
+            resize(table.length);
+        }
+        int mask = table.length / 2 - 1;
+        int slot = hash(key) & mask;
+        while (table[2 * slot] != EMPTY && table[2 * slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (table[2 * slot] == EMPTY) {
+            size++;
+        }
+        table[2 * slot] = key;
+        table[2 * slot + 1] = value;
+    }
+
+    public void remove(long key) {
+        int mask = table.length / 2 - 1;
+        int slot = hash(key) & mask;
+        while (table[2 * slot] != key) {
+            if (table[2 * slot] == EMPTY) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        // Pull back every later entry of the run that would not be found past the gap
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (table[2 * next] != EMPTY) {
+            int home = hash(table[2 * next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                table[2 * gap] = table[2 * next];
+                table[2 * gap + 1] = table[2 * next + 1];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[2 * gap] = EMPTY;
+        size--;
+    }
+
+    private void resize(int slots) {
+        long[] old = table;
+        long[] grown = newTable(slots);
+        int mask = slots - 1;
+        for (int i = 0; i < old.length; i += 2) {
+            if (old[i] != EMPTY) {
+                int slot = hash(old[i]) & mask;
+                while (grown[2 * slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                grown[2 * slot] = old[i];
+                grown[2 * slot + 1] = old[i + 1];
+            }
+        }
+        table = grown;
+    }
+
+    private static long[] newTable(int slots) {
+        long[] table = new long[2 * slots];
+        for (int i = 0; i < table.length; i += 2) {
+            table[i] = EMPTY;
+        }
+        return table;
+    }
+
+    // ISBNs share prefixes and differ in their last digits; mixing spreads them
+    private static int hash(long key) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+}
@@ -0,0 +1,407 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Store backed by a columnar snapshot file that is memory-mapped rather than
+// read. Title, author, ISBN and description each have a UTF-8 string heap and
+// an offset array; category is a code into a small name table; year and
+// availability are packed into one int. A last column lists the ids sorted by
+// normalized ISBN, so ISBN lookups need no hash index. Opening only maps the
+// columns, and a field is decoded when it is first read, so a
+// multi-million-title snapshot opens in milliseconds. Books added, edited or removed after opening are
+// kept in an in-memory overlay; the file itself is never written.
+public class MappedBookStore implements BookStore {
+    private static final int MAGIC = 0x4C4D5343; // "LMSC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 256;
+
+    private static final int TITLE = 0;
+    private static final int AUTHOR = 1;
+    private static final int ISBN = 2;
+    private static final int DESCRIPTION = 3;
+    private static final int STRING_COLUMNS = 4;
+
+    private final long generation;
+    private final int count;
+    private final IntBuffer[] offsets = new IntBuffer[STRING_COLUMNS];
+    private final ByteBuffer[] heaps = new ByteBuffer[STRING_COLUMNS];
+    private final String[] categoryNames;
+    private final CharBuffer categoryCodes;
+    private final IntBuffer yearAndAvailability;
+    private final IntBuffer isbnOrder;
+
+    // Changes made since the snapshot was opened
+    private Book[] overlay = new Book[0];
+    private final BitSet removed = new BitSet();
+    private final BitSet availabilityFlipped = new BitSet(); // snapshot books checked out or returned since
+
+    private MappedBookStore(FileChannel channel) throws IOException {
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Not a columnar catalog snapshot");
+        }
+        generation = header.getLong();
+        count = header.getInt();
+        int categoryCount = header.getInt();
+        for (int column = 0; column < STRING_COLUMNS; column++) {
+            offsets[column] = map(channel, header.getLong(), 4L * (count + 1)).asIntBuffer();
+            heaps[column] = map(channel, header.getLong(), header.getLong());
+        }
+        ByteBuffer names = map(channel, header.getLong(), header.getLong());
+        categoryCodes = map(channel, header.getLong(), 2L * count).asCharBuffer();
+        yearAndAvailability = map(channel, header.getLong(), 4L * count).asIntBuffer();
+        isbnOrder = map(channel, header.getLong(), 4L * count).asIntBuffer();
+
+        categoryNames = new String[categoryCount];
+        for (int i = 0; i < categoryCount; i++) {
+            byte[] bytes = new byte[names.getInt()];
+            names.get(bytes);
+            categoryNames[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    public static MappedBookStore open(Path path) throws IOException {
+        // The mappings stay valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MappedBookStore(channel);
+        }
+    }
+
+    // Number of books in the snapshot; they hold ids 0 to count - 1
+    public int getCount() {
+        return count;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public void put(int id, Book book) {
+        if (id >= overlay.length) {
+            overlay = Arrays.copyOf(overlay, Math.max(Math.max(overlay.length * 2, 1024), id + 1));
+        }
+        overlay[id] = book;
+        removed.clear(id);
+        availabilityFlipped.clear(id);
+    }
+
+    @Override
+    public void remove(int id) {
+        if (id < overlay.length) {
+            overlay[id] = null;
+        }
+        if (id < count) {
+            removed.set(id);
+        }
+    }
+
+    @Override
+    public boolean contains(int id) {
+        if (id < 0) {
+            return false;
+        }
+        return id < count ? !removed.get(id) : overlaid(id) != null;
+    }
+
+    @Override
+    public Book get(int id) {
+        if (!contains(id)) {
+            return null;
+        }
+        Book book = overlaid(id);
+        if (book != null) {
+            return book;
+        }
+        return new Book(getTitle(id), getAuthor(id), getIsbn(id), getCategory(id), getDescription(id),
+            getYear(id), isAvailable(id));
+    }
+
+    @Override
+    public String getTitle(int id) {
+        Book book = overlaid(id);
+        return book != null ? book.getTitle() : string(TITLE, id);
+    }
+
+    @Override
+    public String getAuthor(int id) {
+        Book book = overlaid(id);
+        return book != null ? book.getAuthor() : string(AUTHOR, id);
+    }
+
+    @Override
+    public String getIsbn(int id) {
+        Book book = overlaid(id);
+        return book != null ? book.getIsbn() : string(ISBN, id);
+    }
+
+    @Override
+    public String getCategory(int id) {
+        Book book = overlaid(id);
+        return book != null ? book.getCategory() : categoryNames[categoryCodes.get(id)];
+    }
+
+    @Override
+    public String getDescription(int id) {
+        Book book = overlaid(id);
+        return book != null ? book.getDescription() : string(DESCRIPTION, id);
+    }
+
+    @Override
+    public int getYear(int id) {
+        Book book = overlaid(id);
+        return book != null ? book.getYear() : yearAndAvailability.get(id) >> 1;
+    }
+
+    @Override
+    public boolean isAvailable(int id) {
+        Book book = overlaid(id);
+        return book != null ? book.isAvailable() : snapshotAvailable(id) != availabilityFlipped.get(id);
+    }
+
+    // A snapshot book only flips a bit; an edited one gets a fresh Book,
+    // because readers may still hold the old one
+    @Override
+    public void setAvailable(int id, boolean available) {
+        Book book = overlaid(id);
+        if (book != null) {
+            overlay[id] = new Book(book.getTitle(), book.getAuthor(), book.getIsbn(), book.getCategory(),
+                book.getDescription(), book.getYear(), available);
+        } else {
+            availabilityFlipped.set(id, available != snapshotAvailable(id));
+        }
+    }
+
+    private boolean snapshotAvailable(int id) {
+        return (yearAndAvailability.get(id) & 1) != 0;
+    }
+
+    // Id of the snapshot book whose ISBN, as written, normalizes to key, or -1.
+    // Edits and removals made since opening are not taken into account.
+    public int findIsbn(String key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int id = isbnOrder.get(middle);
+            int comparison = compareIsbn(id, key);
+            if (comparison == 0) {
+                return id;
+            } else if (comparison < 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return -1;
+    }
+
+    // Compares the normalized ISBN of snapshot book id with key straight from
+    // the heap bytes; ISBNs with non-ASCII characters are decoded instead
+    private int compareIsbn(int id, String key) {
+        int end = offsets[ISBN].get(id + 1);
+        ByteBuffer heap = heaps[ISBN];
+        int matched = 0;
+        for (int position = offsets[ISBN].get(id); position < end; position++) {
+            byte b = heap.get(position);
+            if (b < 0) {
+                return Catalog.normalizeIsbn(string(ISBN, id)).compareTo(key);
+            }
+            if (b == '-' || Character.isWhitespace(b)) {
+                continue;
+            }
+            if (matched == key.length()) {
+                return 1;
+            }
+            int difference = Character.toUpperCase((char) b) - key.charAt(matched++);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return matched - key.length();
+    }
+
+    private Book overlaid(int id) {
+        Book[] current = overlay;
+        return id < current.length ? current[id] : null;
+    }
+
+    private String string(int column, int id) {
+        int start = offsets[column].get(id);
+        int length = offsets[column].get(id + 1) - start;
+        ByteBuffer heap = heaps[column];
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = heap.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot column is larger than 2 GB");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    // Writes books as a columnar snapshot; they are read back with ids in array order
+    public static void write(Path path, Book[] books, long generation) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ColumnWriter out = new ColumnWriter(channel, HEADER_SIZE);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(generation).putInt(books.length);
+
+            Map<String, Integer> categories = new LinkedHashMap<>();
+            for (Book book : books) {
+                Integer code = categories.get(book.getCategory());
+                if (code == null) {
+                    categories.put(book.getCategory(), categories.size());
+                }
+            }
+            if (categories.size() > Character.MAX_VALUE + 1) {
+                throw new IOException("Too many categories for a snapshot");
+            }
+            header.putInt(categories.size());
+
+            int[] columnOffsets = new int[books.length + 1];
+            for (int column = 0; column < STRING_COLUMNS; column++) {
+                long heapPosition = out.position();
+                long heapLength = 0;
+                for (int i = 0; i < books.length; i++) {
+                    byte[] bytes = text(books[i], column).getBytes(StandardCharsets.UTF_8);
+                    out.putBytes(bytes);
+                    heapLength += bytes.length;
+                    if (heapLength > Integer.MAX_VALUE) {
+                        throw new IOException("Snapshot column is larger than 2 GB");
+                    }
+                    columnOffsets[i + 1] = (int) heapLength;
+                }
+                out.align();
+                header.putLong(out.position());
+                for (int offset : columnOffsets) {
+                    out.putInt(offset);
+                }
+                header.putLong(heapPosition).putLong(heapLength);
+            }
+
+            out.align();
+            long namesPosition = out.position();
+            for (String category : categories.keySet()) {
+                byte[] bytes = category.getBytes(StandardCharsets.UTF_8);
+                out.putInt(bytes.length);
+                out.putBytes(bytes);
+            }
+            header.putLong(namesPosition).putLong(out.position() - namesPosition);
+
+            out.align();
+            header.putLong(out.position());
+            for (Book book : books) {
+                out.putChar((char) (int) categories.get(book.getCategory()));
+            }
+            out.align();
+            header.putLong(out.position());
+            for (Book book : books) {
+                out.putInt((book.getYear() << 1) | (book.isAvailable() ? 1 : 0));
+            }
+            header.putLong(out.position());
+            String[] keys = new String[books.length];
+            Integer[] order = new Integer[books.length];
+            for (int i = 0; i < books.length; i++) {
+                keys[i] = Catalog.normalizeIsbn(books[i].getIsbn());
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> keys[a].compareTo(keys[b]));
+            for (int id : order) {
+                out.putInt(id);
+            }
+            out.flush();
+
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+    }
+
+    private static String text(Book book, int column) {
+        String value;
+        switch (column) {
+            case TITLE: value = book.getTitle(); break;
+            case AUTHOR: value = book.getAuthor(); break;
+            case ISBN: value = book.getIsbn(); break;
+            default: value = book.getDescription(); break;
+        }
+        return value == null ? "" : value;
+    }
+
+    // Buffered positional writes, so the header can be filled in at the end
+    private static class ColumnWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+        private long flushed;
+
+        ColumnWriter(FileChannel channel, long start) {
+            this.channel = channel;
+            this.flushed = start;
+        }
+
+        long position() {
+            return flushed + buffer.position();
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+            }
+        }
+
+        void putInt(int value) throws IOException {
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            buffer.putInt(value);
+        }
+
+        void putChar(char value) throws IOException {
+            if (buffer.remaining() < 2) {
+                flush();
+            }
+            buffer.putChar(value);
+        }
+
+        // Pads to 8 bytes so every column starts aligned
+        void align() throws IOException {
+            while ((position() & 7) != 0) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                buffer.put((byte) 0);
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                flushed += channel.write(buffer, flushed);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+// A registered borrower. Numbers are handed out by Circulation, starting at
+// 1. With a BorrowingHistory they are saved and never reused, so the numbers
+// in the history always mean the same member; without one they last a run.
+public class Member {
+    private final int number;
+    private final String name;
+
+    public Member(int number, String name) {
+        this.number = number;
+        this.name = name;
+    }
+
+    public int getNumber() { return number; }
+
+    public String getName() { return name; }
+
+    @Override
+    public String toString() {
+        return name + " (#" + number + ")";
+    }
+}
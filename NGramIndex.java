@@ -0,0 +1,177 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+// Trigram inverted index over one text field. Every lower-cased three-character
+// window of a book's text maps to the ids of the books containing it, so a
+// "contains" query only has to intersect the posting lists of its own trigrams
+// and verify the few candidates that survive. Trigrams are packed into longs
+// and looked up in a LongIntMap, which gives the slot of their posting list,
+// so no key is boxed on the search or indexing path. A list whose last book
+// went stays in its slot, ready for the next book with that trigram.
+public class NGramIndex {
+    public static final int N = 3;
+
+    private final LongIntMap slots = new LongIntMap();
+    private IdList[] postings = new IdList[64];
+    private int count;
+
+    public void add(int id, String text) {
+        String folded = fold(text);
+        for (int i = 0; i + N <= folded.length(); i++) {
+            add(id, key(folded, i));
+        }
+    }
+
+    public void remove(int id, String text) {
+        String folded = fold(text);
+        for (int i = 0; i + N <= folded.length(); i++) {
+            remove(id, key(folded, i));
+        }
+    }
+
+    // Touches only the trigrams that differ between the two texts, so an edit
+    // that keeps most of the text leaves most posting lists alone
+    public void update(int id, String oldText, String newText) {
+        if (oldText.equals(newText)) {
+            return;
+        }
+        long[] oldKeys = keys(fold(oldText));
+        long[] newKeys = keys(fold(newText));
+        int i = 0;
+        int j = 0;
+        while (i < oldKeys.length || j < newKeys.length) {
+            if (j == newKeys.length || i < oldKeys.length && oldKeys[i] < newKeys[j]) {
+                remove(id, oldKeys[i++]);
+            } else if (i == oldKeys.length || newKeys[j] < oldKeys[i]) {
+                add(id, newKeys[j++]);
+            } else {
+                i++;
+                j++;
+            }
+        }
+    }
+
+    // Ids of books containing every trigram of the query, in id order. These
+    // still need verifying. Returns null when the query is shorter than a trigram.
+    public int[] candidates(String foldedQuery) {
+        int grams = foldedQuery.length() - N + 1;
+        if (grams <= 0) {
+            return null;
+        }
+        IdList[] lists = new IdList[grams];
+        for (int i = 0; i < grams; i++) {
+            lists[i] = list(key(foldedQuery, i));
+            if (lists[i] == null || lists[i].size() == 0) {
+                return new int[0];
+            }
+        }
+        Arrays.sort(lists, Comparator.comparingInt(IdList::size));
+
+        int[] result = lists[0].toArray();
+        int count = result.length;
+        for (int l = 1; l < lists.length && count > 0; l++) {
+            if (lists[l] == lists[l - 1]) {
+                continue; // The query repeats a trigram
+            }
+            count = lists[l].retainAll(result, count);
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    // Size of the shortest posting list among the query's trigrams, an upper
+    // bound on its candidates; -1 when the query is shorter than a trigram
+    public int estimate(String foldedQuery) {
+        int grams = foldedQuery.length() - N + 1;
+        if (grams <= 0) {
+            return -1;
+        }
+        int smallest = Integer.MAX_VALUE;
+        for (int i = 0; i < grams; i++) {
+            IdList list = list(key(foldedQuery, i));
+            if (list == null) {
+                return 0;
+            }
+            smallest = Math.min(smallest, list.size());
+        }
+        return smallest;
+    }
+
+    // Lower-cases character by character, the same way the index does
+    public static String fold(String text) {
+        char[] chars = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            char lower = Character.toLowerCase(c);
+            if (lower != c) {
+                if (chars == null) {
+                    chars = text.toCharArray();
+                }
+                chars[i] = lower;
+            }
+        }
+        return chars == null ? text : new String(chars);
+    }
+
+    // Case-insensitive contains that does not allocate a lower-cased copy of text
+    public static boolean containsFolded(String text, String foldedQuery) {
+        int last = text.length() - foldedQuery.length();
+        for (int start = 0; start <= last; start++) {
+            int i = 0;
+            while (i < foldedQuery.length()
+                    && Character.toLowerCase(text.charAt(start + i)) == foldedQuery.charAt(i)) {
+                i++;
+            }
+            if (i == foldedQuery.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void add(int id, long key) {
+        int slot = slots.get(key);
+        if (slot < 0) {
+            if (count == postings.length) {
+                postings = Arrays.copyOf(postings, count * 2);
+            }
+            slot = count++;
+            postings[slot] = new IdList();
+            slots.put(key, slot);
+        }
+        postings[slot].add(id);
+    }
+
+    private void remove(int id, long key) {
+        IdList list = list(key);
+        if (list != null) {
+            list.remove(id);
+        }
+    }
+
+    private IdList list(long key) {
+        int slot = slots.get(key);
+        return slot < 0 ? null : postings[slot];
+    }
+
+    // The distinct trigrams of folded, sorted
+    private static long[] keys(String folded) {
+        int grams = Math.max(0, folded.length() - N + 1);
+        long[] keys = new long[grams];
+        for (int i = 0; i < grams; i++) {
+            keys[i] = key(folded, i);
+        }
+        Arrays.sort(keys);
+        int distinct = 0;
+        for (int i = 0; i < grams; i++) {
+            if (distinct == 0 || keys[i] != keys[distinct - 1]) {
+                keys[distinct++] = keys[i];
+            }
+        }
+        return Arrays.copyOf(keys, distinct);
+    }
+
+    // Packs the three chars into a non-negative long; LongIntMap spreads the bits
+    private static long key(String folded, int start) {
+        return ((long) folded.charAt(start) << 32) | ((long) folded.charAt(start + 1) << 16) | folded.charAt(start + 2);
+    }
+}
@@ -0,0 +1,58 @@
+import java.util.Arrays;
+
+// Default store: keeps the Book objects exactly as they were added
+public class ObjectBookStore implements BookStore {
+    private Book[] slots = new Book[1024];
+
+    @Override
+    public void put(int id, Book book) {
+        if (id >= slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(slots.length * 2, id + 1));
+        }
+        slots[id] = book;
+    }
+
+    @Override
+    public void remove(int id) {
+        slots[id] = null;
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return id >= 0 && id < slots.length && slots[id] != null;
+    }
+
+    @Override
+    public Book get(int id) {
+        return contains(id) ? slots[id] : null;
+    }
+
+    @Override
+    public String getTitle(int id) { return slots[id].getTitle(); }
+
+    @Override
+    public String getAuthor(int id) { return slots[id].getAuthor(); }
+
+    @Override
+    public String getIsbn(int id) { return slots[id].getIsbn(); }
+
+    @Override
+    public String getCategory(int id) { return slots[id].getCategory(); }
+
+    @Override
+    public String getDescription(int id) { return slots[id].getDescription(); }
+
+    @Override
+    public int getYear(int id) { return slots[id].getYear(); }
+
+    @Override
+    public boolean isAvailable(int id) { return slots[id].isAvailable(); }
+
+    // A fresh Book, because readers may still hold the old one
+    @Override
+    public void setAvailable(int id, boolean available) {
+        Book old = slots[id];
+        slots[id] = new Book(old.getTitle(), old.getAuthor(), old.getIsbn(), old.getCategory(), old.getDescription(),
+            old.getYear(), available);
+    }
+}
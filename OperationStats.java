@@ -0,0 +1,32 @@
+import java.beans.ConstructorProperties;
+
+// A reading of one operation's histogram, in microseconds, for JMX
+public class OperationStats {
+    private final long count;
+    private final double perSecond;
+    private final double p50Micros;
+    private final double p90Micros;
+    private final double p99Micros;
+    private final double p999Micros;
+    private final double maxMicros;
+
+    @ConstructorProperties({"count", "perSecond", "p50Micros", "p90Micros", "p99Micros", "p999Micros", "maxMicros"})
+    public OperationStats(long count, double perSecond, double p50Micros, double p90Micros, double p99Micros,
+            double p999Micros, double maxMicros) {
+        this.count = count;
+        this.perSecond = perSecond;
+        this.p50Micros = p50Micros;
+        this.p90Micros = p90Micros;
+        this.p99Micros = p99Micros;
+        this.p999Micros = p999Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    public long getCount() { return count; }
+    public double getPerSecond() { return perSecond; }
+    public double getP50Micros() { return p50Micros; }
+    public double getP90Micros() { return p90Micros; }
+    public double getP99Micros() { return p99Micros; }
+    public double getP999Micros() { return p999Micros; }
+    public double getMaxMicros() { return maxMicros; }
+}
@@ -0,0 +1,149 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntPredicate;
+
+// Scans the ids below a bound in chunks of consecutive ids on the common
+// fork-join pool, with the calling thread taking part. A chunk is small
+// enough for the pool to balance the work across cores and large enough that
+// the store columns it reads stream through the cache. Results come back in
+// chunk order, so joining them keeps id order. Short scans, and machines with
+// a single core, run the same chunks on the calling thread. Every chunk first
+// checks whether the calling thread was interrupted, so a scan that a newer
+// query replaced ends once the chunks already running finish. Callers hold
+// the catalog's read lock throughout; the pool threads only read the store.
+public final class ParallelScan {
+    // Fewer ids than this are scanned on the calling thread
+    public static final int SEQUENTIAL_BELOW = 1 << 15;
+    private static final int CHUNK = 1 << 12;
+    private static final int[] NONE = new int[0];
+
+    private ParallelScan() {
+    }
+
+    // The work for the ids from first up to end
+    public interface Chunk<R> {
+        R scan(int first, int end);
+    }
+
+    // Results of chunk for every range of ids below idBound, in id order.
+    // Ranges skipped after an interrupt are given to chunk empty.
+    public static <R> List<R> map(int idBound, Chunk<R> chunk) {
+        int chunks = (idBound + CHUNK - 1) / CHUNK;
+        Object[] results = new Object[chunks];
+        Thread caller = Thread.currentThread();
+        if (idBound < SEQUENTIAL_BELOW || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            for (int i = 0; i < chunks; i++) {
+                results[i] = run(chunk, i, idBound, caller);
+            }
+        } else {
+            new Split<>(chunk, results, 0, chunks, idBound, caller).invoke();
+        }
+        @SuppressWarnings("unchecked")
+        List<R> list = (List<R>) Arrays.asList(results);
+        return list;
+    }
+
+    // The first limit ids below idBound that pass the filter, in id order.
+    // Once the chunks up to some point hold limit matches between them, the
+    // chunks after it are skipped.
+    public static int[] ids(int idBound, IntPredicate filter, int limit) {
+        Cutoff cutoff = new Cutoff((idBound + CHUNK - 1) / CHUNK, limit);
+        List<int[]> parts = map(idBound, (first, end) -> {
+            int index = first / CHUNK;
+            if (index > cutoff.last) {
+                return NONE;
+            }
+            int[] found = new int[16];
+            int count = 0;
+            for (int id = first; id < end && count < limit; id++) {
+                if (filter.test(id)) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = id;
+                }
+            }
+            cutoff.done(index, count);
+            return count == 0 ? NONE : Arrays.copyOf(found, count);
+        });
+        int total = 0;
+        for (int[] part : parts) {
+            total += part.length;
+        }
+        int[] ids = new int[(int) Math.min(total, (long) Math.max(limit, 0))];
+        int count = 0;
+        for (int[] part : parts) {
+            int take = Math.min(part.length, ids.length - count);
+            System.arraycopy(part, 0, ids, count, take);
+            count += take;
+        }
+        return ids;
+    }
+
+    private static <R> R run(Chunk<R> chunk, int index, int idBound, Thread caller) {
+        int first = index * CHUNK;
+        if (caller.isInterrupted()) {
+            return chunk.scan(first, first);
+        }
+        return chunk.scan(first, Math.min(first + CHUNK, idBound));
+    }
+
+    // Halves a run of chunks until one is left, so idle threads steal large runs
+    private static final class Split<R> extends RecursiveAction {
+        private final Chunk<R> chunk;
+        private final Object[] results;
+        private final int from;
+        private final int to;
+        private final int idBound;
+        private final Thread caller;
+
+        Split(Chunk<R> chunk, Object[] results, int from, int to, int idBound, Thread caller) {
+            this.chunk = chunk;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.idBound = idBound;
+            this.caller = caller;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                results[from] = run(chunk, from, idBound, caller);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Split<>(chunk, results, from, middle, idBound, caller),
+                new Split<>(chunk, results, middle, to, idBound, caller));
+        }
+    }
+
+    // Tracks how many matches the finished chunks at the start of the range
+    // hold, and the last chunk still needed once they reach the limit
+    private static final class Cutoff {
+        private final int[] counts;
+        private final int limit;
+        private int finished;
+        private long matches;
+        volatile int last;
+
+        Cutoff(int chunks, int limit) {
+            counts = new int[chunks];
+            Arrays.fill(counts, -1);
+            this.limit = limit;
+            last = limit > 0 ? chunks : -1;
+        }
+
+        synchronized void done(int index, int count) {
+            counts[index] = count;
+            while (finished < counts.length && counts[finished] >= 0 && matches < limit) {
+                matches += counts[finished++];
+            }
+            if (matches >= limit) {
+                last = Math.min(last, finished - 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Recent search results, so a search patrons repeat all day is a map lookup.
+// Entries are keyed by the kind of search and its normalized text, and
+// remember the catalog version they were computed at; an entry from before
+// the latest change is dropped instead of served. The least recently used
+// entries go first once there are too many or they hold too many ids between
+// them, and a result too big to keep without pushing out most of the others
+// is not kept at all. The hit and miss counts tell whether the bounds fit.
+public class QueryCache {
+    private final int maxEntries;
+    private final long maxIds;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long heldIds;
+    private long hits;
+    private long misses;
+
+    private static final class Entry {
+        final long version;
+        final int[] ids;
+
+        Entry(long version, int[] ids) {
+            this.version = version;
+            this.ids = ids;
+        }
+    }
+
+    public QueryCache(int maxEntries, long maxIds) {
+        this.maxEntries = maxEntries;
+        this.maxIds = maxIds;
+    }
+
+    // A copy of the ids kept for the key at this version, or null
+    public synchronized int[] get(String key, long version) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.version != version) {
+            if (entry != null) {
+                entries.remove(key);
+                heldIds -= entry.ids.length;
+            }
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.ids.clone();
+    }
+
+    public synchronized void put(String key, long version, int[] ids) {
+        if (ids.length > maxIds / 4) {
+            return;
+        }
+        Entry old = entries.put(key, new Entry(version, ids.clone()));
+        if (old != null) {
+            heldIds -= old.ids.length;
+        }
+        heldIds += ids.length;
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries || heldIds > maxIds) {
+            heldIds -= eldest.next().getValue().ids.length;
+            eldest.remove();
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    // Share of lookups answered from the cache, 0 before the first one
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHeldIds() {
+        return heldIds;
+    }
+}
@@ -0,0 +1,51 @@
+import java.util.Arrays;
+
+// Maps table rows to catalog ids when ids are removed from the middle.
+// A Fenwick tree over the live flag of every id answers "which id is row r"
+// and "which row is id i" in O(log n), so a removal never shifts an array.
+public class RowIndex {
+    private int[] tree = new int[1025]; // 1-based
+    private int length;
+
+    // Tracks one more id, live, at the end
+    public void append() {
+        int i = ++length;
+        if (i == tree.length) {
+            tree = Arrays.copyOf(tree, tree.length * 2);
+        }
+        int value = 1;
+        for (int child = i - 1, stop = i - (i & -i); child > stop; child -= child & -child) {
+            value += tree[child];
+        }
+        tree[i] = value;
+    }
+
+    public void remove(int id) {
+        for (int i = id + 1; i <= length; i += i & -i) {
+            tree[i]--;
+        }
+    }
+
+    // Number of live ids below id, which is the row of id when it is live
+    public int rank(int id) {
+        int count = 0;
+        for (int i = id; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    // Id shown at the given row
+    public int select(int row) {
+        int remaining = row + 1;
+        int position = 0;
+        for (int step = Integer.highestOneBit(Math.max(length, 1)); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= length && tree[next] < remaining) {
+                position = next;
+                remaining -= tree[next];
+            }
+        }
+        return position;
+    }
+}
@@ -1,23 +1,54 @@
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Collectors;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 public class SearchPanel extends JPanel {
     private JTable searchTable;
-    private DefaultTableModel tableModel;
+    private BookTableModel tableModel;
     private JTextField searchField;
     private JComboBox<String> searchTypeCombo;
-    private List<Book> allBooks;
+    private final Catalog catalog;
     private JLabel resultCountLabel;
+    private JCheckBox liveSearchCheckBox;
+    private JTextField fromYearField, toYearField;
+    private JCheckBox availableOnlyCheckBox;
+    private JCheckBox fuzzyCheckBox;
+
+    // Searches run one at a time on a background thread. Each request gets a
+    // generation number and only the result of the newest one reaches the table.
+    private static final int DEBOUNCE_MILLIS = 150;
+    // Description searches are ranked, so only the most relevant books are shown
+    private static final int DESCRIPTION_RESULTS = 100;
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "book-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Timer debounceTimer;
+    private Future<?> pendingSearch;
+    private long searchGeneration;
 
-    public SearchPanel() {
+    // While results are shown, catalog changes re-run the search that produced them
+    private Function<Catalog, int[]> resultSearch;
+    private final CatalogListener catalogListener = events -> {
+        if (resultSearch != null) {
+            runSearch(resultSearch);
+        }
+    };
+
+    public SearchPanel(Catalog catalog) {
+        this.catalog = catalog;
         setLayout(new BorderLayout());
-        allBooks = new ArrayList<>();
+        catalog.addCatalogListener(catalogListener);
         initializeComponents();
     }
 
@@ -35,7 +66,7 @@ public class SearchPanel extends JPanel {
         ));
 
         // Create styled combo box
-        String[] searchTypes = {"Title", "Author", "Category", "ISBN"};
+        String[] searchTypes = {"Title", "Author", "Category", "ISBN", "Description"};
         searchTypeCombo = new JComboBox<>(searchTypes);
         searchTypeCombo.setFont(new Font("Segoe UI", Font.PLAIN, 12));
         
@@ -47,25 +78,47 @@ public class SearchPanel extends JPanel {
         resultCountLabel.setFont(new Font("Segoe UI", Font.PLAIN, 12));
         resultCountLabel.setForeground(new Color(100, 100, 100));
 
+        // Create live search checkbox
+        liveSearchCheckBox = new JCheckBox("Search as you type");
+        liveSearchCheckBox.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        liveSearchCheckBox.setSelected(true);
+
+        // Year range and availability narrow the search; a blank year means any
+        fromYearField = new JTextField(4);
+        toYearField = new JTextField(4);
+        availableOnlyCheckBox = new JCheckBox("Available only");
+        availableOnlyCheckBox.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+
+        // Typo-tolerant matching of whole words, closest first; titles and authors only
+        fuzzyCheckBox = new JCheckBox("Allow typos");
+        fuzzyCheckBox.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+
         searchPanel.add(new JLabel("Search:"));
         searchPanel.add(searchField);
         searchPanel.add(new JLabel("By:"));
         searchPanel.add(searchTypeCombo);
+        searchPanel.add(new JLabel("Years:"));
+        searchPanel.add(fromYearField);
+        searchPanel.add(new JLabel("to"));
+        searchPanel.add(toYearField);
+        searchPanel.add(availableOnlyCheckBox);
+        searchPanel.add(fuzzyCheckBox);
         searchPanel.add(searchButton);
+        searchPanel.add(liveSearchCheckBox);
         searchPanel.add(resultCountLabel);
 
         // Create table with custom renderer
-        String[] columns = {"Title", "Author", "ISBN", "Category", "Available"};
-        tableModel = new DefaultTableModel(columns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        tableModel = new BookTableModel(catalog,
+            BookTableModel.Column.TITLE,
+            BookTableModel.Column.AUTHOR,
+            BookTableModel.Column.ISBN,
+            BookTableModel.Column.CATEGORY,
+            BookTableModel.Column.AVAILABLE);
         searchTable = new JTable(tableModel);
         searchTable.setRowHeight(30);
         searchTable.setFont(new Font("Segoe UI", Font.PLAIN, 12));
         searchTable.getTableHeader().setFont(new Font("Segoe UI", Font.BOLD, 12));
+        tableModel.sortOnHeaderClick(searchTable);
         
         // Add hover effect
         searchTable.addMouseListener(new MouseAdapter() {
@@ -90,6 +143,42 @@ public class SearchPanel extends JPanel {
         // Add search functionality
         searchButton.addActionListener(e -> performSearch());
         searchField.addActionListener(e -> performSearch());
+
+        // Restart the debounce timer on every keystroke so a burst of typing runs one search
+        debounceTimer = new Timer(DEBOUNCE_MILLIS, e -> performSearch());
+        debounceTimer.setRepeats(false);
+        DocumentListener liveSearchListener = new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                scheduleLiveSearch();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                scheduleLiveSearch();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                scheduleLiveSearch();
+            }
+        };
+        searchField.getDocument().addDocumentListener(liveSearchListener);
+        fromYearField.getDocument().addDocumentListener(liveSearchListener);
+        toYearField.getDocument().addDocumentListener(liveSearchListener);
+        searchTypeCombo.addActionListener(e -> {
+            String searchType = (String) searchTypeCombo.getSelectedItem();
+            fuzzyCheckBox.setEnabled("Title".equals(searchType) || "Author".equals(searchType));
+            scheduleLiveSearch();
+        });
+        fuzzyCheckBox.addActionListener(e -> scheduleLiveSearch());
+        availableOnlyCheckBox.addActionListener(e -> scheduleLiveSearch());
+    }
+
+    private void scheduleLiveSearch() {
+        if (liveSearchCheckBox.isSelected()) {
+            debounceTimer.restart();
+        }
     }
 
     private JButton createStyledButton(String text, String icon) {
@@ -117,50 +206,69 @@ public class SearchPanel extends JPanel {
         return button;
     }
 
-    public void setBooks(List<Book> books) {
-        this.allBooks = books;
-        updateTable(books);
-    }
-
     private void performSearch() {
-        String searchText = searchField.getText().toLowerCase();
+        debounceTimer.stop();
+        String searchText = searchField.getText();
         String searchType = (String) searchTypeCombo.getSelectedItem();
+        List<BookQuery> parts = new ArrayList<>();
 
-        List<Book> filteredBooks = allBooks.stream()
-            .filter(book -> {
-                switch (searchType) {
-                    case "Title":
-                        return book.getTitle().toLowerCase().contains(searchText);
-                    case "Author":
-                        return book.getAuthor().toLowerCase().contains(searchText);
-                    case "Category":
-                        return book.getCategory().toLowerCase().contains(searchText);
-                    case "ISBN":
-                        return book.getIsbn().toLowerCase().contains(searchText);
-                    default:
-                        return false;
-                }
-            })
-            .collect(Collectors.toList());
-
-        updateTable(filteredBooks);
-        updateResultCount(filteredBooks.size());
+        String fromText = fromYearField.getText().trim();
+        String toText = toYearField.getText().trim();
+        if (!fromText.isEmpty() || !toText.isEmpty()) {
+            try {
+                int from = fromText.isEmpty() ? Integer.MIN_VALUE : Integer.parseInt(fromText);
+                int to = toText.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(toText);
+                parts.add(BookQuery.yearBetween(from, to));
+            } catch (NumberFormatException e) {
+                resultCountLabel.setText("Years must be numbers");
+                return;
+            }
+        }
+        if (availableOnlyCheckBox.isSelected()) {
+            parts.add(BookQuery.available());
+        }
+        BookQuery filter = BookQuery.and(parts.toArray(new BookQuery[0]));
+        if ("Description".equals(searchType)) {
+            runSearch(searchCatalog -> searchCatalog.searchDescriptions(searchText, DESCRIPTION_RESULTS, filter));
+            return;
+        }
+        BookSearchIndex.Field field = BookSearchIndex.Field.valueOf(searchType.toUpperCase());
+        if (fuzzyCheckBox.isEnabled() && fuzzyCheckBox.isSelected()) {
+            runSearch(searchCatalog -> searchCatalog.searchFuzzy(field, searchText, filter));
+        } else {
+            BookQuery query = BookQuery.and(BookQuery.contains(field, searchText), filter);
+            runSearch(searchCatalog -> searchCatalog.search(query));
+        }
     }
 
-    private void updateTable(List<Book> books) {
-        tableModel.setRowCount(0);
-        for (Book book : books) {
-            tableModel.addRow(new Object[]{
-                book.getTitle(),
-                book.getAuthor(),
-                book.getIsbn(),
-                book.getCategory(),
-                book.isAvailable() ? "Yes" : "No"
-            });
+    private void runSearch(Function<Catalog, int[]> search) {
+        resultSearch = search;
+        Catalog searchCatalog = catalog;
+        long generation = ++searchGeneration;
+
+        // Interrupting the stale search lets a long fallback scan stop early
+        if (pendingSearch != null) {
+            pendingSearch.cancel(true);
         }
+        pendingSearch = searchExecutor.submit(() -> {
+            int[] matches = search.apply(searchCatalog);
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (generation == searchGeneration) {
+                    tableModel.setIds(searchCatalog, matches, matches.length);
+                    updateResultCount(matches.length);
+                }
+            });
+        });
     }
 
     private void updateResultCount(int count) {
         resultCountLabel.setText(count + " result" + (count != 1 ? "s" : "") + " found");
+        // Hovering the count shows how well the search cache is doing
+        QueryCache cache = catalog.getQueryCache();
+        resultCountLabel.setToolTipText(String.format("Search cache: %.0f%% of %d searches answered from %d kept results",
+            cache.getHitRate() * 100, cache.getHits() + cache.getMisses(), cache.size()));
     }
 } 
\ No newline at end of file
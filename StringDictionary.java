@@ -0,0 +1,33 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Assigns a small int code to each distinct string so columns can store the
+// code instead of a reference, and hands back one canonical String per value.
+// Codes are never released; a value stays in the dictionary once seen.
+public class StringDictionary {
+    private final Map<String, Integer> codes = new HashMap<>();
+    private volatile String[] values = new String[64];
+
+    public synchronized int encode(String value) {
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        int next = codes.size();
+        if (next == values.length) {
+            values = Arrays.copyOf(values, next * 2);
+        }
+        values[next] = value;
+        codes.put(value, next);
+        return next;
+    }
+
+    public String decode(int code) {
+        return values[code];
+    }
+
+    public synchronized int size() {
+        return codes.size();
+    }
+}
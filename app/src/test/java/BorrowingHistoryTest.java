@@ -0,0 +1,174 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// Restarts from what a crash can leave behind in the history directory. A
+// crash is a copy of the directory taken while the history is still open.
+public class BorrowingHistoryTest {
+    private static final String ISBN = "9780743247542";
+    private static final Instant JANUARY = Instant.parse("2026-01-10T10:00:00Z");
+    private static final Instant FEBRUARY = Instant.parse("2026-02-10T10:00:00Z");
+    private static final Instant FROM = Instant.parse("2026-01-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2026-03-01T00:00:00Z");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replayDropsATornTailRecord() throws IOException {
+        Path directory = folder.newFolder("history").toPath();
+        Path crashed = folder.newFolder("crashed").toPath();
+        BorrowingHistory history = BorrowingHistory.open(directory, at(JANUARY));
+        try {
+            record(history, 3);
+            copyFiles(directory, crashed);
+        } finally {
+            history.close();
+        }
+        long intact = Files.size(crashed.resolve("history.tail"));
+        ByteBuffer torn = ByteBuffer.allocate(13);
+        torn.putInt(100).putInt(0x12345678).put(new byte[5]).flip();
+        append(crashed.resolve("history.tail"), torn);
+
+        BorrowingHistory reopened = BorrowingHistory.open(crashed, at(JANUARY));
+        try {
+            assertEquals(3, reopened.getEvents(ISBN, FROM, TO).size());
+            assertEquals(intact, Files.size(crashed.resolve("history.tail")));
+            record(reopened, 1);
+        } finally {
+            reopened.close();
+        }
+        assertEquals(4, countEvents(crashed));
+    }
+
+    @Test
+    public void replayCutsOffATornBlockAndKeepsItsEventsFromTheTail() throws IOException {
+        Path directory = folder.newFolder("history").toPath();
+        Path crashed = folder.newFolder("crashed").toPath();
+        BorrowingHistory history = BorrowingHistory.open(directory, at(JANUARY));
+        record(history, 2);
+        history.close(); // Moves both into a block
+        history = BorrowingHistory.open(directory, at(JANUARY));
+        try {
+            record(history, 2);
+            copyFiles(directory, crashed);
+        } finally {
+            history.close();
+        }
+        // The crash came while the tail's events were going into a second block
+        Path segment = crashed.resolve("history-2026-01.seg");
+        long oneBlock = Files.size(segment);
+        ByteBuffer torn = ByteBuffer.allocate(60);
+        torn.putInt(500).putInt(900).putInt(2).putInt(0).putLong(4).flip();
+        append(segment, torn);
+
+        BorrowingHistory reopened = BorrowingHistory.open(crashed, at(JANUARY));
+        try {
+            assertEquals(oneBlock, Files.size(segment));
+            assertEquals(4, reopened.getEvents(ISBN, FROM, TO).size());
+        } finally {
+            reopened.close();
+        }
+        assertEquals(4, countEvents(crashed));
+    }
+
+    @Test
+    public void replaySkipsTailEventsAlreadyInABlock() throws IOException {
+        Path directory = folder.newFolder("history").toPath();
+        Path crashed = folder.newFolder("crashed").toPath();
+        BorrowingHistory history = BorrowingHistory.open(directory, at(JANUARY));
+        try {
+            record(history, 2);
+            copyFiles(directory, crashed);
+        } finally {
+            history.close();
+        }
+        // The block was written but the crash came before the tail was emptied
+        Files.copy(directory.resolve("history-2026-01.seg"), crashed.resolve("history-2026-01.seg"),
+            StandardCopyOption.REPLACE_EXISTING);
+
+        BorrowingHistory reopened = BorrowingHistory.open(crashed, at(JANUARY));
+        try {
+            assertEquals(2, reopened.getEvents(ISBN, FROM, TO).size());
+            record(reopened, 1);
+        } finally {
+            reopened.close();
+        }
+        assertEquals(3, countEvents(crashed));
+    }
+
+    @Test
+    public void openSealsAnEarlierMonthLeftWithoutASummary() throws IOException {
+        Path directory = folder.newFolder("history").toPath();
+        BorrowingHistory history = BorrowingHistory.open(directory, at(JANUARY));
+        record(history, 3);
+        history.close();
+        history = BorrowingHistory.open(directory, at(FEBRUARY));
+        record(history, 1); // Seals January
+        history.close();
+        // The crash came before January's summary was in place
+        Path summary = directory.resolve("history-2026-01.sum");
+        Files.delete(summary);
+
+        BorrowingHistory reopened = BorrowingHistory.open(directory, at(FEBRUARY));
+        try {
+            assertTrue(Files.exists(summary));
+            Map<String, Integer> busiest = reopened.getBusiestTitles(FROM, Instant.parse("2026-02-01T00:00:00Z"), 5);
+            assertEquals(Integer.valueOf(3), busiest.get(ISBN));
+            assertEquals(4, reopened.getEvents(ISBN, FROM, TO).size());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    // Records count loans and waits until they are in the tail
+    private static void record(BorrowingHistory history, int count) {
+        for (int i = 0; i < count; i++) {
+            history.record(HistoryEvent.Type.LOAN, ISBN, 1).join();
+        }
+    }
+
+    private static int countEvents(Path directory) throws IOException {
+        BorrowingHistory history = BorrowingHistory.open(directory, at(JANUARY));
+        try {
+            return history.getEvents(ISBN, FROM, TO).size();
+        } finally {
+            history.close();
+        }
+    }
+
+    private static void copyFiles(Path from, Path to) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(from)) {
+            for (Path file : files) {
+                Files.copy(file, to.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private static void append(Path file, ByteBuffer bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.APPEND)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    private static Clock at(Instant instant) {
+        return Clock.fixed(instant, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,119 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// Restarts from what a crash can leave behind in the data directory
+public class CatalogJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replayCutsOffATornTail() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        saveBooks(directory, 3);
+        long intact = Files.size(journal(directory));
+        // A record whose header claims more payload than was written
+        ByteBuffer torn = ByteBuffer.allocate(13);
+        torn.putInt(100).putInt(0x12345678).put(new byte[5]).flip();
+        append(directory, torn);
+
+        CatalogJournal reopened = CatalogJournal.open(directory, new ObjectBookStore());
+        try {
+            assertEquals(3, reopened.getCatalog().size());
+            assertEquals(intact, Files.size(journal(directory)));
+            reopened.getCatalog().add(book(3));
+            reopened.getCatalog().whenSaved().join();
+        } finally {
+            reopened.close();
+        }
+        assertEquals(4, reopen(directory));
+    }
+
+    @Test
+    public void replayCutsOffATailWithABadChecksum() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        saveBooks(directory, 2);
+        long twoBooks = Files.size(journal(directory));
+        saveBooks(directory, 3);
+        // Flip a byte of the last record's payload
+        try (FileChannel channel = FileChannel.open(journal(directory), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            last.flip();
+            last.put(0, (byte) ~last.get(0));
+            channel.write(last, channel.size() - 1);
+        }
+
+        assertEquals(2, reopen(directory));
+        assertEquals(twoBooks, Files.size(journal(directory)));
+    }
+
+    @Test
+    public void crashBetweenSnapshotAndTruncateDoesNotReplayTheJournalAgain() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        CatalogJournal journal = saveBooks(directory, 3);
+        // What compaction writes before it truncates the journal
+        MappedBookStore.write(directory.resolve("catalog-1.snapshot"), journal.getCatalog().toArray(), 1);
+
+        CatalogJournal reopened = CatalogJournal.open(directory, new ObjectBookStore());
+        try {
+            assertTrue(reopened.getCatalog().isMapped());
+            assertEquals(3, reopened.getCatalog().size());
+            reopened.getCatalog().add(book(3));
+            reopened.getCatalog().whenSaved().join();
+        } finally {
+            reopened.close();
+        }
+        assertEquals(4, reopen(directory));
+    }
+
+    // Adds books 0 to count - 1 to the saved catalog, skipping those already there
+    private static CatalogJournal saveBooks(Path directory, int count) throws IOException {
+        CatalogJournal journal = CatalogJournal.open(directory, new ObjectBookStore());
+        try {
+            for (int i = 0; i < count; i++) {
+                journal.getCatalog().add(book(i));
+            }
+            journal.getCatalog().whenSaved().join();
+        } finally {
+            journal.close();
+        }
+        return journal;
+    }
+
+    private static int reopen(Path directory) throws IOException {
+        CatalogJournal journal = CatalogJournal.open(directory, new ObjectBookStore());
+        try {
+            return journal.getCatalog().size();
+        } finally {
+            journal.close();
+        }
+    }
+
+    private static void append(Path directory, ByteBuffer bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(journal(directory), StandardOpenOption.APPEND)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    private static Path journal(Path directory) {
+        return directory.resolve("catalog.journal");
+    }
+
+    private static Book book(int number) {
+        return new Book("Book " + number, "Author " + number, "isbn-" + number, "Fiction",
+            "Description " + number, 2000 + number, true);
+    }
+}
@@ -0,0 +1,134 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// Loans and holds carry on across a restart of the library
+public class CirculationTest {
+    private static final Instant FIRST_DAY = Instant.parse("2026-03-02T10:00:00Z");
+    private static final String[] ISBNS = {"978-0743247542", "978-0399588174", "978-0062316097", "978-0393317558"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final SettableClock clock = new SettableClock(FIRST_DAY);
+
+    @Test
+    public void restartRestoresLoansDueDatesHoldsAndReservations() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        Library library = new Library(directory);
+        Circulation circulation = library.circulation;
+        int ann = circulation.registerMember("Ann").getNumber();
+        int bob = circulation.registerMember("Bob").getNumber();
+        int cat = circulation.registerMember("Cat").getNumber();
+        int[] books = new int[ISBNS.length];
+        for (int i = 0; i < ISBNS.length; i++) {
+            books[i] = library.catalog.add(new Book("Book " + i, "Author", ISBNS[i], "History", "", 2000, true));
+        }
+        assertNull(circulation.checkout(books[0], ann));
+        assertNull(circulation.checkout(books[1], bob));
+        assertNull(circulation.placeHold(books[1], cat));
+        assertNull(circulation.checkout(books[2], ann));
+        assertNull(circulation.placeHold(books[2], bob));
+        assertNull(circulation.placeHold(books[2], cat));
+        assertNull(circulation.checkout(books[3], cat));
+        clock.instant = FIRST_DAY.plusSeconds(3 * 86400);
+        assertNull(circulation.renew(books[0]));
+        assertNull(circulation.checkin(books[2])); // Goes to the hold shelf for Bob
+        assertNull(circulation.checkin(books[3]));
+        assertNull(circulation.placeHold(books[1], ann));
+        assertNull(circulation.cancelHold(books[1], ann));
+        library.close();
+
+        library = new Library(directory);
+        circulation = library.circulation;
+        LocalDate firstDay = LocalDate.of(2026, 3, 2);
+        Loan renewed = circulation.getLoan(books[0]);
+        assertEquals(ann, renewed.getMemberNumber());
+        assertEquals(firstDay, renewed.getIssued());
+        assertEquals(firstDay.plusDays(3 + Circulation.DEFAULT_LOAN_DAYS), renewed.getDue());
+        assertEquals(bob, circulation.getLoan(books[1]).getMemberNumber());
+        assertEquals(firstDay.plusDays(Circulation.DEFAULT_LOAN_DAYS), circulation.getLoan(books[1]).getDue());
+        assertEquals(Collections.singletonList(cat), circulation.getHolds(books[1]));
+        assertNull(circulation.getLoan(books[2]));
+        assertEquals(bob, circulation.getReservedFor(books[2]));
+        assertEquals(Arrays.asList(bob, cat), circulation.getHolds(books[2]));
+        assertNull(circulation.getLoan(books[3]));
+        assertEquals(-1, circulation.getReservedFor(books[3]));
+        assertEquals(1, circulation.getLoans(ann).size());
+        clock.instant = FIRST_DAY.plusSeconds(16 * 86400);
+        List<Loan> overdue = circulation.getOverdueLoans();
+        assertEquals(1, overdue.size());
+        assertEquals(books[1], overdue.get(0).getBookId());
+
+        // Returns still name the borrower, and the reserved copy goes to Bob only
+        assertNull(circulation.checkin(books[0]));
+        assertEquals(Circulation.Problem.HELD_FOR_ANOTHER, circulation.checkout(books[2], cat));
+        assertNull(circulation.checkout(books[2], bob));
+        library.circulation.flush();
+        assertFalse(library.catalog.isAvailable(books[2]));
+        assertTrue(library.catalog.isAvailable(books[0]));
+        List<HistoryEvent> events = library.history.getEvents(ISBNS[0], FIRST_DAY, clock.instant.plusSeconds(1));
+        assertEquals(ann, events.get(events.size() - 1).getMemberNumber());
+        library.close();
+    }
+
+    // A catalog with its journal, the borrowing history and circulation, all kept in one directory
+    private final class Library {
+        final CatalogJournal journal;
+        final Catalog catalog;
+        final BorrowingHistory history;
+        final Circulation circulation;
+
+        Library(Path directory) throws IOException {
+            journal = CatalogJournal.open(directory, new ObjectBookStore());
+            catalog = journal.getCatalog();
+            history = BorrowingHistory.open(directory.resolve("history"), clock);
+            circulation = new Circulation(catalog, clock, Circulation.DEFAULT_LOAN_DAYS, history);
+        }
+
+        void close() throws IOException {
+            circulation.whenSaved().join();
+            circulation.flush();
+            history.close();
+            journal.close();
+        }
+    }
+
+    private static final class SettableClock extends Clock {
+        Instant instant;
+
+        SettableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+import benchmarks.Workloads;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.IntPredicate;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Predicate;
+
+// Builds a reproducible synthetic catalog with the Book constructor and
+// exposes the application's hot paths to the benchmarks.
+public class CatalogWorkloads implements Workloads {
+    private static final String[] WORDS = {
+        "silent", "river", "shadow", "empire", "garden", "winter", "stone", "light", "secret", "city",
+        "ocean", "forgotten", "house", "night", "storm", "crown", "broken", "glass", "wild", "song",
+        "history", "science", "mountain", "journey", "kingdom", "dream", "fire", "memory", "island", "road",
+        "star", "machine", "golden", "last", "hidden", "iron", "paper", "summer", "wolf", "mirror"
+    };
+    private static final String[] FIRST_NAMES = {
+        "Anna", "James", "Maria", "David", "Sofia", "Peter", "Laura", "Daniel", "Elena", "Thomas",
+        "Clara", "Samuel", "Nora", "Victor", "Alice", "Henry", "Julia", "Oscar", "Irene", "Lucas"
+    };
+    private static final String[] LAST_NAMES = {
+        "Smith", "Garcia", "Novak", "Okafor", "Tanaka", "Larsen", "Rossi", "Dubois", "Kowalski", "Silva",
+        "Haddad", "Nguyen", "Schmidt", "Ivanova", "Murphy", "Costa", "Fischer", "Moreau", "Berg", "Patel"
+    };
+    private static final String[] CATEGORIES = {
+        "Fiction", "Non-Fiction", "Science Fiction", "Fantasy", "Romance", "Mystery", "Biography", "History"
+    };
+
+    // A query per search type that matches a realistic share of the catalog
+    private static final String TITLE_QUERY = "shadow";
+    private static final String AUTHOR_QUERY = "novak";
+    private static final String CATEGORY_QUERY = "fiction";
+    private static final String ISBN_QUERY = "00012";
+
+    // The title and author queries with a typo each
+    private static final String TITLE_TYPO = "shadwo";
+    private static final String AUTHOR_TYPO = "nowak";
+
+    // Two description words, each in about one description in seven
+    private static final String TOPIC_QUERY = "forgotten storm";
+
+    // Results a scan stops at when it only fills the first screen
+    private static final int FIRST_PAGE = 100;
+
+    private final Catalog catalog;
+
+    public CatalogWorkloads(int size, String storage) {
+        catalog = "compact".equals(storage) ? new Catalog(new CompactBookStore()) : new Catalog();
+        Random random = new Random(42);
+        List<Book> batch = new ArrayList<>(10000);
+        for (int i = 0; i < size; i++) {
+            batch.add(syntheticBook(random, i));
+            if (batch.size() == 10000) {
+                catalog.addAll(batch);
+                batch.clear();
+            }
+        }
+        catalog.addAll(batch);
+    }
+
+    private static Book syntheticBook(Random random, int index) {
+        String title = capitalize(word(random)) + " " + word(random)
+            + (random.nextBoolean() ? " of the " + word(random) : "");
+        String author = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+            + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+        String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+        String description = "A " + word(random) + " story about the " + word(random) + " and the " + word(random);
+        int year = 1800 + random.nextInt(225);
+        return new Book(title, author, isbn(index), category, description, year, random.nextInt(5) != 0);
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    // A valid ISBN-13, as nearly every real book has
+    private static String isbn(long index) {
+        String digits = String.format("978%09d", index);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (i % 2 == 0 ? 1 : 3) * (digits.charAt(i) - '0');
+        }
+        return "978-" + digits.substring(3) + (10 - sum % 10) % 10;
+    }
+
+    @Override
+    public IntSupplier search(String field) {
+        BookSearchIndex.Field searchField = BookSearchIndex.Field.valueOf(field.toUpperCase(Locale.ROOT));
+        String query;
+        switch (searchField) {
+            case TITLE: query = TITLE_QUERY; break;
+            case AUTHOR: query = AUTHOR_QUERY; break;
+            case CATEGORY: query = CATEGORY_QUERY; break;
+            default: query = ISBN_QUERY; break;
+        }
+        return () -> catalog.search(searchField, query).length;
+    }
+
+    @Override
+    public IntSupplier fuzzySearch(String field) {
+        BookSearchIndex.Field searchField = BookSearchIndex.Field.valueOf(field.toUpperCase(Locale.ROOT));
+        String query = searchField == BookSearchIndex.Field.TITLE ? TITLE_TYPO : AUTHOR_TYPO;
+        BookQuery anyBook = BookQuery.and();
+        return () -> catalog.searchFuzzy(searchField, query, anyBook).length;
+    }
+
+    @Override
+    public IntSupplier descriptionSearch(int limit) {
+        BookQuery anyBook = BookQuery.and();
+        return () -> catalog.searchDescriptions(TOPIC_QUERY, limit, anyBook).length;
+    }
+
+    @Override
+    public IntSupplier query(String shape) {
+        if (shape.startsWith("scan")) {
+            // Availability is never indexed, so every book is checked
+            BookQuery available = BookQuery.available();
+            int limit = "scanFirstPage".equals(shape) ? FIRST_PAGE : Integer.MAX_VALUE;
+            return () -> catalog.search(available, limit).length;
+        }
+        BookQuery query;
+        if ("selective".equals(shape)) {
+            // The author index drives and the other parts check its ids
+            query = BookQuery.and(BookQuery.available(), BookQuery.category("Science Fiction"),
+                BookQuery.yearBetween(2015, 2020), BookQuery.contains(BookSearchIndex.Field.AUTHOR, AUTHOR_QUERY));
+        } else {
+            // Nothing narrower than a century of years
+            query = BookQuery.and(BookQuery.available(), BookQuery.yearBetween(1900, 1999));
+        }
+        return () -> catalog.search(query).length;
+    }
+
+    @Override
+    public Predicate<String> isbnInUse() {
+        return isbn -> BookValidator.validate(catalog, new Book("Title", "Author", isbn, "Fiction", ""), -1)
+            == BookValidator.Problem.DUPLICATE_ISBN;
+    }
+
+    @Override
+    public String existingIsbn(int index) {
+        return isbn(index % catalog.size());
+    }
+
+    @Override
+    public String unusedIsbn(int index) {
+        return isbn(catalog.size() + (long) index);
+    }
+
+    @Override
+    public IntSupplier categoryCounts() {
+        CategoryCounts counts = catalog.getCategoryCounts();
+        return () -> {
+            int total = 0;
+            for (String category : CATEGORIES) {
+                total += counts.get(category);
+            }
+            return total;
+        };
+    }
+
+    @Override
+    public IntUnaryOperator tablePage(int rows) {
+        BookTableModel model = new BookTableModel(catalog, BookTableModel.Column.values());
+        return first -> {
+            model.setCatalog(catalog);
+            int hash = 0;
+            int end = Math.min(first + rows, model.getRowCount());
+            for (int row = first; row < end; row++) {
+                for (int column = 0; column < model.getColumnCount(); column++) {
+                    hash += model.getValueAt(row, column).hashCode();
+                }
+            }
+            return hash;
+        };
+    }
+
+    @Override
+    public IntSupplier sortedTable(String column, boolean results) {
+        BookTableModel model = new BookTableModel(catalog, BookTableModel.Column.values());
+        model.sortBy(BookTableModel.Column.valueOf(column.toUpperCase(Locale.ROOT)));
+        int[] found = catalog.search(BookSearchIndex.Field.TITLE, TITLE_QUERY);
+        return () -> {
+            if (results) {
+                model.setIds(catalog, found, found.length);
+            } else {
+                model.setCatalog(catalog);
+            }
+            return model.getIdAt(0);
+        };
+    }
+
+    @Override
+    public IntPredicate circulate() {
+        Circulation circulation = new Circulation(catalog);
+        int member = circulation.registerMember("Benchmark").getNumber();
+        return index -> {
+            int id = catalog.idAt(index % catalog.size());
+            if (circulation.checkout(id, member) != null) {
+                return false;
+            }
+            circulation.checkin(id);
+            return true;
+        };
+    }
+
+    @Override
+    public int size() {
+        return catalog.size();
+    }
+}
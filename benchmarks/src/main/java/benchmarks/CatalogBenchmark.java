@@ -0,0 +1,43 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Shared settings: every benchmark runs against synthetic catalogs of 10k, 1M
+// and 10M books, built once per fork. The 10M catalog needs about 10 GB of heap
+// with the default store; pass -p storage=compact to use the compact layout.
+// The search result cache is off, so repeated searches measure the indexes.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx12g", "-Dlibrary.queryCache=0"})
+public abstract class CatalogBenchmark {
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"object"})
+    public String storage;
+
+    protected Workloads workloads;
+
+    @Setup(Level.Trial)
+    public void buildCatalog() {
+        workloads = Workloads.create(size, storage);
+        prepare();
+    }
+
+    protected abstract void prepare();
+}
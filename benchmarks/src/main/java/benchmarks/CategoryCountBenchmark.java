@@ -0,0 +1,20 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.util.function.IntSupplier;
+
+// Refreshing the categories tab's counts
+public class CategoryCountBenchmark extends CatalogBenchmark {
+    private IntSupplier categoryCounts;
+
+    @Override
+    protected void prepare() {
+        categoryCounts = workloads.categoryCounts();
+    }
+
+    @Benchmark
+    public int countCategories() {
+        return categoryCounts.getAsInt();
+    }
+}
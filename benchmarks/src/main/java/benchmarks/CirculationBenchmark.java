@@ -0,0 +1,36 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+// Checkouts and returns per second from several desks at once, either spread
+// over the catalog or all fighting over the same copy.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+public class CirculationBenchmark extends CatalogBenchmark {
+    private final AtomicInteger next = new AtomicInteger();
+    private IntPredicate circulate;
+
+    @Override
+    protected void prepare() {
+        circulate = workloads.circulate();
+    }
+
+    @Benchmark
+    public boolean spreadCopies() {
+        return circulate.test(next.getAndAdd(7919) & Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public boolean sameCopy() {
+        return circulate.test(0);
+    }
+}
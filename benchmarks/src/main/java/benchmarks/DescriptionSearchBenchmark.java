@@ -0,0 +1,24 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.function.IntSupplier;
+
+// Ranked description search keeping a page of results and keeping a lot of them
+public class DescriptionSearchBenchmark extends CatalogBenchmark {
+    @Param({"10", "1000"})
+    public int limit;
+
+    private IntSupplier search;
+
+    @Override
+    protected void prepare() {
+        search = workloads.descriptionSearch(limit);
+    }
+
+    @Benchmark
+    public int search() {
+        return search.getAsInt();
+    }
+}
@@ -0,0 +1,24 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.function.IntSupplier;
+
+// Typo-tolerant search for a misspelled title word and author name
+public class FuzzySearchBenchmark extends CatalogBenchmark {
+    @Param({"title", "author"})
+    public String field;
+
+    private IntSupplier search;
+
+    @Override
+    protected void prepare() {
+        search = workloads.fuzzySearch(field);
+    }
+
+    @Benchmark
+    public int search() {
+        return search.getAsInt();
+    }
+}
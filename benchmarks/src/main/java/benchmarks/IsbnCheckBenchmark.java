@@ -0,0 +1,36 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.util.function.Predicate;
+
+// The duplicate-ISBN check run before a book is saved, for an ISBN that is
+// taken and one that is free. Cycles through many ISBNs so lookups miss caches
+// the way real entries do.
+public class IsbnCheckBenchmark extends CatalogBenchmark {
+    private static final int KEYS = 4096;
+
+    private final String[] existing = new String[KEYS];
+    private final String[] unused = new String[KEYS];
+    private Predicate<String> isbnInUse;
+    private int next;
+
+    @Override
+    protected void prepare() {
+        isbnInUse = workloads.isbnInUse();
+        for (int i = 0; i < KEYS; i++) {
+            existing[i] = workloads.existingIsbn(i * 7919);
+            unused[i] = workloads.unusedIsbn(i);
+        }
+    }
+
+    @Benchmark
+    public boolean duplicateIsbn() {
+        return isbnInUse.test(existing[next++ & (KEYS - 1)]);
+    }
+
+    @Benchmark
+    public boolean newIsbn() {
+        return isbnInUse.test(unused[next++ & (KEYS - 1)]);
+    }
+}
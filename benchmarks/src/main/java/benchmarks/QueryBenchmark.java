@@ -0,0 +1,25 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.function.IntSupplier;
+
+// Multi-field queries: one an index narrows down, one that matches a large
+// share, and one no index can answer, scanned in full and for a first page
+public class QueryBenchmark extends CatalogBenchmark {
+    @Param({"selective", "broad", "scan", "scanFirstPage"})
+    public String shape;
+
+    private IntSupplier query;
+
+    @Override
+    protected void prepare() {
+        query = workloads.query(shape);
+    }
+
+    @Benchmark
+    public int query() {
+        return query.getAsInt();
+    }
+}
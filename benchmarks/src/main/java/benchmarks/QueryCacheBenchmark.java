@@ -0,0 +1,37 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.function.IntPredicate;
+import java.util.function.IntSupplier;
+
+// A search patrons repeat, with the result cache on: answered from the cache,
+// and again after a checkout, which leaves results not about availability valid
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx12g", "-Dlibrary.queryCache=512"})
+public class QueryCacheBenchmark extends CatalogBenchmark {
+    @Param({"title", "author"})
+    public String field;
+
+    private IntSupplier search;
+    private IntPredicate circulate;
+    private int index;
+
+    @Override
+    protected void prepare() {
+        search = workloads.search(field);
+        circulate = workloads.circulate();
+    }
+
+    @Benchmark
+    public int repeatedSearch() {
+        return search.getAsInt();
+    }
+
+    @Benchmark
+    public int searchAfterCheckout() {
+        circulate.test(index++);
+        return search.getAsInt();
+    }
+}
@@ -0,0 +1,24 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.function.IntSupplier;
+
+// The search panel's query for each search type
+public class SearchBenchmark extends CatalogBenchmark {
+    @Param({"title", "author", "category", "isbn"})
+    public String field;
+
+    private IntSupplier search;
+
+    @Override
+    protected void prepare() {
+        search = workloads.search(field);
+    }
+
+    @Benchmark
+    public int search() {
+        return search.getAsInt();
+    }
+}
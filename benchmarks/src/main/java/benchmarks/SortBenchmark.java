@@ -0,0 +1,32 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.function.IntSupplier;
+
+// Showing the catalog and a search result sorted by a column. The kept
+// order is built in setup, so this measures what every later sort costs.
+public class SortBenchmark extends CatalogBenchmark {
+    @Param({"title", "year"})
+    public String column;
+
+    private IntSupplier catalogSorted;
+    private IntSupplier resultsSorted;
+
+    @Override
+    protected void prepare() {
+        catalogSorted = workloads.sortedTable(column, false);
+        resultsSorted = workloads.sortedTable(column, true);
+    }
+
+    @Benchmark
+    public int sortCatalog() {
+        return catalogSorted.getAsInt();
+    }
+
+    @Benchmark
+    public int sortResults() {
+        return resultsSorted.getAsInt();
+    }
+}
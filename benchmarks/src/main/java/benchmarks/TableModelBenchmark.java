@@ -0,0 +1,25 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.util.function.IntUnaryOperator;
+
+// Showing the catalog in the book table: binding the model and reading one
+// screen of rows, at a different scroll position each time
+public class TableModelBenchmark extends CatalogBenchmark {
+    private static final int VISIBLE_ROWS = 40;
+
+    private IntUnaryOperator tablePage;
+    private int first;
+
+    @Override
+    protected void prepare() {
+        tablePage = workloads.tablePage(VISIBLE_ROWS);
+    }
+
+    @Benchmark
+    public int populateVisibleRows() {
+        first = (first + 7919) % Math.max(1, workloads.size() - VISIBLE_ROWS);
+        return tablePage.applyAsInt(first);
+    }
+}
@@ -0,0 +1,66 @@
+package benchmarks;
+
+import java.util.function.IntPredicate;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Predicate;
+
+// The operations the benchmarks measure, over a synthetic catalog. The
+// application lives in the default package, where JMH does not allow benchmark
+// classes and which named packages cannot import, so the benchmarks see only
+// this interface. CatalogWorkloads implements it next to the application
+// classes and is loaded by name once per trial.
+public interface Workloads {
+    static Workloads create(int size, String storage) {
+        try {
+            return (Workloads) Class.forName("CatalogWorkloads")
+                .getConstructor(int.class, String.class)
+                .newInstance(size, storage);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot build the synthetic catalog", e);
+        }
+    }
+
+    // Search as the search panel runs it; returns the number of matches
+    IntSupplier search(String field);
+
+    // Typo-tolerant search of titles or authors for a misspelled word;
+    // returns the number of matches
+    IntSupplier fuzzySearch(String field);
+
+    // Relevance-ranked search of descriptions for a two-word topic, keeping
+    // the given number of best matches; returns how many came back
+    IntSupplier descriptionSearch(int limit);
+
+    // A query over several fields at once, as the search panel builds it
+    // with a year range and availability, or availability alone, which has
+    // to scan; returns the number of matches
+    IntSupplier query(String shape);
+
+    // The duplicate check the book form runs before saving a new book
+    Predicate<String> isbnInUse();
+
+    // ISBN of the book added at position index
+    String existingIsbn(int index);
+
+    // An ISBN no synthetic book has
+    String unusedIsbn(int index);
+
+    // Reads every per-category count, as the categories tab does; returns the total
+    IntSupplier categoryCounts();
+
+    // Points the book table model at the catalog and reads the given number
+    // of rows from the first one on, as painting the table does
+    IntUnaryOperator tablePage(int rows);
+
+    // Binds a book table model sorted by the column, as clicking its header
+    // does, to the whole catalog or to the results of a title search;
+    // returns the id on the first row
+    IntSupplier sortedTable(String column, boolean results);
+
+    // Checks out the book at position index and takes it back again, as the
+    // circulation desk does; returns whether the checkout went through
+    IntPredicate circulate();
+
+    int size();
+}